@@ -0,0 +1,78 @@
+package benchmarks;
+
+import beamSearch.BeamSearch;
+import beamSearch.Tuple;
+import languageModel.NGramStore;
+import languageModel.Scorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An end-to-end benchmark of 'BeamSearch.beamSearch' recovering two plaintexts drawn from the corpus with a fixed
+ * seed, parameterised by n, the prune number P, the plaintext length, the engine and the number of threads.
+ * The model is built from the whole corpus once per trial and is not part of the score.
+ *
+ * @author Shaquille Momoh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BeamSearchBenchmark {
+
+    @Param({"3", "5"})
+    public int n;
+
+    @Param({"100", "1000"})
+    public int pruneNumber;
+
+    @Param({"20", "100"})
+    public int plaintextLength;
+
+    @Param({"laplace", "dense", "kn"})
+    public String engine;
+
+    @Param({"1"})
+    public int threads;
+
+    private final BeamSearch beam = new BeamSearch();
+    private Scorer scorer;
+    private byte[] xorOfPlaintexts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        NGramStore store = new NGramStore(n);
+        store.addNGrams(BenchmarkCorpus.text());
+        scorer = Engines.create(engine, store);
+        xorOfPlaintexts = BenchmarkCorpus.xorOfPlaintexts(plaintextLength);
+        beam.setThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        beam.close();
+    }
+
+    @Benchmark
+    public ArrayList<Tuple> beamSearch() {
+        return beam.beamSearch(scorer, n, pruneNumber, xorOfPlaintexts);
+    }
+
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import beamSearch.BeamSearch;
+import languageModel.ParseCorpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A class that loads the corpus shared by the benchmarks and draws plaintexts from it with a fixed seed, so every
+ * run of every benchmark works on exactly the same text.
+ * The corpus is the bundled mobydick.txt unless the system property 'corpus' names another file.
+ *
+ * @author Shaquille Momoh
+ */
+public class BenchmarkCorpus {
+
+    public static final long SEED = 20170411L;
+
+    private static String text;
+
+    /**
+     * @return : The text of the corpus, read once per JVM.
+     * @throws IOException
+     */
+    public static synchronized String text() throws IOException {
+        if (text == null) {
+            text = new ParseCorpus().fileToString(new File(System.getProperty("corpus", "src/mobydick.txt")));
+        }
+        return text;
+    }
+
+    /**
+     * A method that draws plaintexts from random positions of the corpus, the same ones on every run.
+     *
+     * @param count  : The number of plaintexts.
+     * @param length : The length of each plaintext.
+     * @param seed   : The seed of the positions.
+     * @return : The plaintexts.
+     * @throws IOException
+     */
+    public static String[] plaintexts(int count, int length, long seed) throws IOException {
+        String corpus = text();
+        Random rand = new Random(seed);
+        String[] plaintexts = new String[count];
+        for (int i = 0; i < count; i++) {
+            int start = rand.nextInt(corpus.length() - length);
+            plaintexts[i] = corpus.substring(start, start + length);
+        }
+        return plaintexts;
+    }
+
+    /**
+     * A method that returns the XOR of two plaintexts drawn with a fixed seed.
+     *
+     * @param length : The length of the plaintexts.
+     * @return : The XOR of the plaintexts.
+     * @throws IOException
+     */
+    public static byte[] xorOfPlaintexts(int length) throws IOException {
+        return BeamSearch.getXOROfPlaintext(plaintexts(2, length, SEED), 2);
+    }
+
+}
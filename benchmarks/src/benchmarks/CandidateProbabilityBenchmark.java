@@ -0,0 +1,108 @@
+package benchmarks;
+
+import languageModel.NGramStore;
+import languageModel.Scorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the latency of scoring the extensions of one candidate with each engine: the rows of log
+ * probabilities of every next character of each of two plaintexts, looked up with 'Scorer.scoreRow' as Beam Search
+ * looks them up. ScoreCache only caches rows, so this is also what the cached engine speeds up. Every call scores
+ * the next pair of a fixed-seed list of plaintext prefixes drawn from the corpus, so the lookups are not all the
+ * same. 'MapCandidateProbabilityBenchmark' times the original map based scorer on the same prefixes.
+ *
+ * @author Shaquille Momoh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CandidateProbabilityBenchmark {
+
+    static final int PAIRS = 1024;
+
+    @Param({"3", "5"})
+    public int n;
+
+    @Param({"200000"})
+    public int length;
+
+    @Param({"laplace", "dense", "kn", "cached"})
+    public String engine;
+
+    private Scorer scorer;
+    private final double[] rowOne = new double[Scorer.ROW_WIDTH];
+    private final double[] rowTwo = new double[Scorer.ROW_WIDTH];
+
+    // The packed context of each plaintext prefix of each pair, and its length.
+    private long[] contextOnes;
+    private long[] contextTwos;
+    private int[] contextLengths;
+    private int pair;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        NGramStore store = new NGramStore(n);
+        store.addNGrams(BenchmarkCorpus.text().substring(0, length));
+        scorer = Engines.create(engine, store);
+
+        String[][] prefixes = prefixes();
+        contextOnes = new long[PAIRS];
+        contextTwos = new long[PAIRS];
+        contextLengths = new int[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            int prefix = prefixes[0][i].length();
+            int contextLength = Math.min(prefix - 1, n - 1);
+            contextLengths[i] = contextLength;
+            contextOnes[i] = NGramStore.pack(prefixes[0][i], prefix - 1 - contextLength, prefix - 1);
+            contextTwos[i] = NGramStore.pack(prefixes[1][i], prefix - 1 - contextLength, prefix - 1);
+        }
+    }
+
+    /**
+     * A method that draws the fixed-seed pairs of plaintext prefixes the candidate benchmarks score. The last
+     * character of each prefix is the one scored.
+     *
+     * @return : The prefixes of the first plaintext of each pair, then those of the second.
+     * @throws IOException
+     */
+    static String[][] prefixes() throws IOException {
+        Random rand = new Random(BenchmarkCorpus.SEED);
+        String[] plaintexts = BenchmarkCorpus.plaintexts(2 * PAIRS, 40, BenchmarkCorpus.SEED);
+        String[][] prefixes = new String[2][PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            int prefix = 1 + rand.nextInt(40);
+            prefixes[0][i] = plaintexts[2 * i].substring(0, prefix);
+            prefixes[1][i] = plaintexts[2 * i + 1].substring(0, prefix);
+        }
+        return prefixes;
+    }
+
+    @Benchmark
+    public void scoreRow(Blackhole bh) {
+        int i = pair++ & (PAIRS - 1);
+        scorer.scoreRow(contextOnes[i], contextLengths[i], rowOne);
+        scorer.scoreRow(contextTwos[i], contextLengths[i], rowTwo);
+        bh.consume(rowOne);
+        bh.consume(rowTwo);
+    }
+
+}
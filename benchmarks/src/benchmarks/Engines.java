@@ -0,0 +1,43 @@
+package benchmarks;
+
+import languageModel.KneserNeyModel;
+import languageModel.LanguageModel;
+import languageModel.NGramStore;
+import languageModel.ScoreCache;
+import languageModel.Scorer;
+
+/**
+ * A class that builds the scorer of each engine the benchmarks compare, by name:
+ *   laplace - the laplace smoothed NGramStore,
+ *   dense   - the laplace smoothed ConditionalTable,
+ *   kn      - the Kneser-Ney model,
+ *   cached  - the Kneser-Ney model behind a ScoreCache.
+ *
+ * @author Shaquille Momoh
+ */
+public class Engines {
+
+    private static final int CACHE_ROWS = 1 << 14;
+
+    /**
+     * @param engine : The name of the engine.
+     * @param store  : The store holding the counts of the corpus.
+     * @return : The scorer of the engine.
+     */
+    public static Scorer create(String engine, NGramStore store) {
+        LanguageModel lm = new LanguageModel();
+        switch (engine) {
+            case "laplace":
+                return lm.createModel(store, false);
+            case "dense":
+                return lm.createModel(store, true);
+            case "kn":
+                return new KneserNeyModel(store);
+            case "cached":
+                return new ScoreCache(new KneserNeyModel(store), CACHE_ROWS);
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+    }
+
+}
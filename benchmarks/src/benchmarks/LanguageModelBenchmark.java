@@ -0,0 +1,84 @@
+package benchmarks;
+
+import languageModel.KneserNeyModel;
+import languageModel.LanguageModel;
+import languageModel.NGram;
+import languageModel.NGramStore;
+import languageModel.Scorer;
+import languageModel.Split;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of building the language model from n-gram counts that have already been taken: the map based
+ * 'LanguageModel.createModel', baking the laplace smoothed log probabilities of a store (optionally into the dense
+ * conditional table), and building the Kneser-Ney model.
+ *
+ * @author Shaquille Momoh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LanguageModelBenchmark {
+
+    @Param({"3", "5"})
+    public int n;
+
+    @Param({"200000"})
+    public int length;
+
+    private final LanguageModel lm = new LanguageModel();
+    private String text;
+    private Map<String, Integer>[] mapArr;
+    private NGramStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        text = BenchmarkCorpus.text().substring(0, length);
+        ConcurrentHashMap<String, Integer> ngrams = new NGram().addNGrams(new ConcurrentHashMap<String, Integer>(),
+                text, 1, n);
+        mapArr = new Split().splitMap(ngrams, n);
+        store = new NGramStore(n);
+        store.addNGrams(text);
+    }
+
+    @Benchmark
+    public HashMap<String, Double> createModelFromMaps() {
+        return lm.createModel(mapArr, text);
+    }
+
+    @Benchmark
+    public Scorer createModelFromStore() {
+        return lm.createModel(store, false);
+    }
+
+    @Benchmark
+    public Scorer createConditionalTable() {
+        return lm.createModel(store, true);
+    }
+
+    @Benchmark
+    public Scorer createKneserNeyModel() {
+        return new KneserNeyModel(store);
+    }
+
+}
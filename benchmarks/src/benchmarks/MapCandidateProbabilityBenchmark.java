@@ -0,0 +1,88 @@
+package benchmarks;
+
+import beamSearch.Tuple;
+import languageModel.LanguageModel;
+import languageModel.NGram;
+import languageModel.NGramModel;
+import languageModel.Split;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the latency of scoring one candidate extension, the next character of each of two plaintexts,
+ * with the original map based 'NGramModel.calculateCandidateProbability'. It does not use the engines of
+ * 'CandidateProbabilityBenchmark', so it is only run once per n, on the same prefixes.
+ *
+ * @author Shaquille Momoh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapCandidateProbabilityBenchmark {
+
+    private static final int PAIRS = CandidateProbabilityBenchmark.PAIRS;
+
+    @Param({"3", "5"})
+    public int n;
+
+    @Param({"200000"})
+    public int length;
+
+    private final NGramModel model = new NGramModel();
+    private String corpus;
+    private Map<String, Integer>[] mapArr;
+    private HashMap<String, Double> languageModel;
+    private int vocabSize;
+
+    // The plaintext prefixes of each pair with the candidate they extend.
+    private Tuple[] candidates;
+    private String[] ones;
+    private String[] twos;
+    private int pair;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = BenchmarkCorpus.text().substring(0, length);
+        ConcurrentHashMap<String, Integer> ngrams = new NGram().addNGrams(new ConcurrentHashMap<String, Integer>(),
+                corpus, 1, n);
+        mapArr = new Split().splitMap(ngrams, n);
+        languageModel = new LanguageModel().createModel(mapArr, corpus);
+        vocabSize = model.getVocabSize(mapArr);
+
+        String[][] prefixes = CandidateProbabilityBenchmark.prefixes();
+        ones = prefixes[0];
+        twos = prefixes[1];
+        candidates = new Tuple[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            int prefix = ones[i].length();
+            candidates[i] = new Tuple(ones[i].substring(0, prefix - 1), twos[i].substring(0, prefix - 1), 0.0, 0.0);
+        }
+    }
+
+    @Benchmark
+    public Double[] calculateCandidateProbability() {
+        int i = pair++ & (PAIRS - 1);
+        return model.calculateCandidateProbability(n, corpus, mapArr, languageModel, candidates[i], ones[i], twos[i],
+                vocabSize);
+    }
+
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import languageModel.NGram;
+import languageModel.NGramStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of counting the n-grams of a slice of the corpus, with the map based 'NGram.addNGrams' and with
+ * 'NGramStore.addNGrams'. Each invocation counts the whole slice, so the score is characters counted per second.
+ *
+ * @author Shaquille Momoh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NGramBenchmark {
+
+    // The characters counted per invocation, fixed as 'OperationsPerInvocation' needs a constant.
+    private static final int LENGTH = 100000;
+
+    @Param({"3", "5"})
+    public int n;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        text = BenchmarkCorpus.text().substring(0, LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public ConcurrentHashMap<String, Integer> ngramMaps() {
+        return new NGram().addNGrams(new ConcurrentHashMap<String, Integer>(), text, 1, n);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public NGramStore ngramStore() {
+        NGramStore store = new NGramStore(n);
+        store.addNGrams(text);
+        return store;
+    }
+
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import beamSearch.ScoringKernel;
+import languageModel.Scorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of scoring the 96 extensions of one pair candidate, with the scalar kernel and with the kernel
+ * 'ScoringKernel.create' picks, which is the vector kernel when it was built and the jdk.incubator.vector module
+ * was added. The score is the time taken per candidate.
+ *
+ * @author Shaquille Momoh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoringKernelBenchmark {
+
+    @Param({"scalar", "create"})
+    public String kernel;
+
+    private ScoringKernel scoring;
+    private final double[] rowOne = new double[Scorer.ROW_WIDTH];
+    private final double[] rowTwo = new double[Scorer.ROW_WIDTH];
+    private int[] chars;
+    private int[] partners;
+    private double[] scoresOne;
+    private double[] scoresTwo;
+    private double[] totals;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scoring = kernel.equals("scalar") ? new ScoringKernel() : ScoringKernel.create();
+        Random random = new Random(BenchmarkCorpus.SEED);
+        for (int i = 0; i < Scorer.ROW_WIDTH; i++) {
+            rowOne[i] = -20 * random.nextDouble();
+            rowTwo[i] = -20 * random.nextDouble();
+        }
+
+        // The printable characters Beam Search extends candidates by: carriage return, then 32 to 126.
+        chars = new int[96];
+        chars[0] = 13;
+        for (int i = 1; i < chars.length; i++) {
+            chars[i] = 31 + i;
+        }
+        partners = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            partners[i] = chars[i] ^ 0x15;
+        }
+        scoresOne = new double[chars.length];
+        scoresTwo = new double[chars.length];
+        totals = new double[chars.length];
+    }
+
+    @Benchmark
+    public double[] score() {
+        scoring.score(rowOne, chars, -31.5, rowTwo, partners, -42.25, scoresOne, scoresTwo, totals, chars.length);
+        return totals;
+    }
+
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import languageModel.Corpus;
+import languageModel.NGramStore;
+import languageModel.Split;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark of counting the n-grams of the whole corpus with 'Split.processAll', to see how it scales with the
+ * number of threads. The corpus is split into one chunk per thread, as 'ParseCorpus.processCorpus' does.
+ *
+ * @author Shaquille Momoh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SplitBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"5"})
+    public int n;
+
+    private Split split;
+    private long corpusLength;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Corpus corpus = Corpus.map(new File(System.getProperty("corpus", "src/mobydick.txt")));
+        split = new Split(corpus, n);
+        corpusLength = corpus.length();
+    }
+
+    @Benchmark
+    public NGramStore processAll() throws InterruptedException, ExecutionException {
+        long chunkSize = Math.max(1, corpusLength / threads);
+        return split.processAll(threads, chunkSize, corpusLength);
+    }
+
+}
@@ -0,0 +1,103 @@
+package beamSearch;
+
+import languageModel.ScoreCache;
+import languageModel.Scorer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class that recovers groups of ciphertexts sharing a keystream, searching each group jointly with
+ * 'BeamSearch.jointSearch'. The language model is loaded once and every search goes through one cache of rows of
+ * log probabilities, so the contexts scored for one ciphertext or group are not scored again for the next.
+ * With more than one thread it keeps a pool of them until it is closed.
+ *
+ * @author Shaquille Momoh
+ */
+public class BatchRecovery implements AutoCloseable {
+
+    private final BeamSearch beam = new BeamSearch();
+    private final ScoreCache cache;
+    private final int n;
+
+    /**
+     * A constructor that creates a batch recovery sharing the given language model.
+     *
+     * @param scorer       : The language model.
+     * @param cacheRows    : The most rows of log probabilities to cache.
+     */
+    public BatchRecovery(Scorer scorer, int cacheRows) {
+        this.cache = new ScoreCache(scorer, cacheRows);
+        this.n = scorer.getN();
+    }
+
+    /**
+     * A method that sets the number of threads used by each search.
+     *
+     * @param threads : The number of threads.
+     */
+    public void setThreads(int threads) {
+        beam.setThreads(threads);
+    }
+
+    /**
+     * A method that shuts down the threads of the searches.
+     */
+    @Override
+    public void close() {
+        beam.close();
+    }
+
+    /**
+     * A method that recovers the plaintexts of ciphertexts encrypted with the same keystream.
+     *
+     * @param ciphertexts : The ciphertexts.
+     * @param pruneNumber : The number to prune each subsequent candidate list down to.
+     * @return : The list of top candidates, with the plaintexts in the order of the ciphertexts.
+     */
+    public ArrayList<PlaintextCandidate> recover(byte[][] ciphertexts, int pruneNumber) {
+        return beam.jointSearch(cache, n, pruneNumber, ciphertexts);
+    }
+
+    /**
+     * A method that recovers several groups of ciphertexts, each group sharing its own keystream.
+     *
+     * @param groups      : The groups of ciphertexts.
+     * @param pruneNumber : The number to prune each subsequent candidate list down to.
+     * @return : The top candidates of each group, in the order of the groups.
+     */
+    public List<ArrayList<PlaintextCandidate>> recoverAll(List<byte[][]> groups, int pruneNumber) {
+        List<ArrayList<PlaintextCandidate>> results = new ArrayList<>(groups.size());
+        for (byte[][] ciphertexts : groups) {
+            results.add(recover(ciphertexts, pruneNumber));
+        }
+        return results;
+    }
+
+    /**
+     * A method that returns the keystream given by a candidate, as far as the longest ciphertext reaches.
+     *
+     * @param candidate   : A candidate returned for the ciphertexts.
+     * @param ciphertexts : The ciphertexts.
+     * @return : The keystream.
+     */
+    public static byte[] keystream(PlaintextCandidate candidate, byte[][] ciphertexts) {
+        int longest = 0;
+        for (int i = 1; i < ciphertexts.length; i++) {
+            if (ciphertexts[i].length > ciphertexts[longest].length) {
+                longest = i;
+            }
+        }
+        byte[] plaintext = candidate.getPlaintextBytes()[longest];
+        byte[] keystream = new byte[plaintext.length];
+        for (int i = 0; i < keystream.length; i++) {
+            keystream[i] = (byte) (plaintext[i] ^ ciphertexts[longest][i]);
+        }
+        return keystream;
+    }
+
+    public ScoreCache getCache() {
+        return cache;
+    }
+
+}
@@ -0,0 +1,190 @@
+package beamSearch;
+
+/**
+ * A class that holds the state of the candidates in the current layer of Beam Search.
+ * For every candidate and every plaintext it stores the log probability so far, the packed
+ * context of the last n-1 bytes, and a rolling hash of the whole plaintext used to detect duplicates.
+ * Two instances are swapped at each position so the arrays are reused instead of reallocated.
+ *
+ * @author Shaquille Momoh
+ */
+public class Beam {
+
+    private static final long HASH_MULTIPLIER = 0x100000001B3L;
+
+    private final int streams;
+    private int size;
+    private double[] scores;
+    private long[] contexts;
+    private long[] hashes;
+
+    /**
+     * A constructor that creates an empty beam.
+     *
+     * @param streams  : The number of plaintexts each candidate holds.
+     * @param capacity : The number of candidates the beam can hold before growing.
+     */
+    public Beam(int streams, int capacity) {
+        this.streams = streams;
+        this.scores = new double[capacity * streams];
+        this.contexts = new long[capacity * streams];
+        this.hashes = new long[capacity * streams];
+    }
+
+    /**
+     * A method that makes sure the beam can hold the given number of candidates, discarding its contents.
+     *
+     * @param capacity : The number of candidates.
+     */
+    public void reset(int capacity) {
+        if (scores.length < capacity * streams) {
+            scores = new double[capacity * streams];
+            contexts = new long[capacity * streams];
+            hashes = new long[capacity * streams];
+        }
+        size = 0;
+    }
+
+    /**
+     * A method that sets the beam to hold only the empty candidate.
+     */
+    public void setRoot() {
+        reset(1);
+        for (int s = 0; s < streams; s++) {
+            scores[s] = 0.0;
+            contexts[s] = 0;
+            hashes[s] = 0;
+        }
+        size = 1;
+    }
+
+    /**
+     * A method that appends a candidate extending the given parent by one byte per plaintext.
+     *
+     * @param parent      : The beam holding the parent.
+     * @param parentIndex : The index of the parent.
+     * @param next        : The byte chosen for each plaintext, 'streams' bytes starting at 'offset'.
+     * @param nextScores  : The log probability of each extended plaintext, 'streams' values starting at 'offset'.
+     * @param offset      : The offset of the first byte and log probability of the extension.
+     * @param contextMask : The mask keeping the last n-1 bytes of a context.
+     * @return : The index of the new candidate.
+     */
+    public int add(Beam parent, int parentIndex, byte[] next, double[] nextScores, int offset, long contextMask) {
+        int entry = size++;
+        for (int s = 0; s < streams; s++) {
+            int from = parentIndex * streams + s;
+            int to = entry * streams + s;
+            int b = next[offset + s] & 0xFF;
+            scores[to] = nextScores[offset + s];
+            contexts[to] = ((parent.contexts[from] << 8) | b) & contextMask;
+            hashes[to] = (parent.hashes[from] + b + 1) * HASH_MULTIPLIER;
+        }
+        return entry;
+    }
+
+    /**
+     * A method that returns a key identifying the candidate regardless of the order of its plaintexts,
+     * so a candidate and the same candidate with its plaintexts swapped have the same key.
+     *
+     * @param parent      : The beam holding the parent.
+     * @param parentIndex : The index of the parent.
+     * @param one         : The byte extending the first plaintext.
+     * @param two         : The byte extending the second plaintext.
+     * @return : The key of the extended candidate.
+     */
+    public static long pairKey(Beam parent, int parentIndex, int one, int two) {
+        long hashOne = (parent.hashes[parentIndex * 2] + (one & 0xFF) + 1) * HASH_MULTIPLIER;
+        long hashTwo = (parent.hashes[parentIndex * 2 + 1] + (two & 0xFF) + 1) * HASH_MULTIPLIER;
+        long lo = Math.min(hashOne, hashTwo);
+        long hi = Math.max(hashOne, hashTwo);
+        long key = lo * 0x9E3779B97F4A7C15L + hi;
+        return key ^ (key >>> 29);
+    }
+
+    /**
+     * A method that returns a key identifying the candidate by one of its plaintexts, for searches where that
+     * plaintext determines all of the others.
+     *
+     * @param parent      : The beam holding the parent.
+     * @param parentIndex : The index of the parent.
+     * @param stream      : The plaintext identifying the candidate.
+     * @param next        : The byte extending that plaintext.
+     * @return : The key of the extended candidate.
+     */
+    public static long streamKey(Beam parent, int parentIndex, int stream, int next) {
+        long key = (parent.hashes[parentIndex * parent.streams + stream] + (next & 0xFF) + 1) * HASH_MULTIPLIER;
+        return key ^ (key >>> 29);
+    }
+
+    /**
+     * A method that returns a key identifying the candidate regardless of the order of its plaintexts, for any
+     * number of plaintexts. The hash of every extended plaintext is sorted before the hashes are combined.
+     *
+     * @param parent      : The beam holding the parent.
+     * @param parentIndex : The index of the parent.
+     * @param next        : The byte extending each plaintext, 'streams' bytes starting at 'offset'.
+     * @param offset      : The offset of the first byte.
+     * @param scratch     : An array of at least 'streams' elements used to sort the hashes.
+     * @return : The key of the extended candidate.
+     */
+    public static long unorderedKey(Beam parent, int parentIndex, byte[] next, int offset, long[] scratch) {
+        int streams = parent.streams;
+        for (int s = 0; s < streams; s++) {
+            long hash = (parent.hashes[parentIndex * streams + s] + (next[offset + s] & 0xFF) + 1) * HASH_MULTIPLIER;
+            int i = s;
+            while (i > 0 && scratch[i - 1] > hash) {
+                scratch[i] = scratch[i - 1];
+                i--;
+            }
+            scratch[i] = hash;
+        }
+        long key = 0;
+        for (int s = 0; s < streams; s++) {
+            key = key * 0x9E3779B97F4A7C15L + scratch[s];
+        }
+        return key ^ (key >>> 29);
+    }
+
+    /**
+     * A method that keeps only the given candidates, in the same order.
+     *
+     * @param entries : The indices of the candidates to keep, in increasing order.
+     * @param count   : The number of candidates to keep.
+     */
+    public void retain(int[] entries, int count) {
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(scores, entries[i] * streams, scores, i * streams, streams);
+            System.arraycopy(contexts, entries[i] * streams, contexts, i * streams, streams);
+            System.arraycopy(hashes, entries[i] * streams, hashes, i * streams, streams);
+        }
+        size = count;
+    }
+
+    /**
+     * A method that subtracts an amount from the log probability of each plaintext of every candidate. The
+     * candidates keep their order, and the log probabilities of a long search stay small enough that adding one
+     * more character is not lost to rounding.
+     *
+     * @param offsets : The amount to subtract from each plaintext.
+     */
+    public void shift(double[] offsets) {
+        for (int entry = 0; entry < size; entry++) {
+            for (int s = 0; s < streams; s++) {
+                scores[entry * streams + s] -= offsets[s];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getScore(int entry, int stream) {
+        return scores[entry * streams + stream];
+    }
+
+    public long getContext(int entry, int stream) {
+        return contexts[entry * streams + stream];
+    }
+
+}
@@ -0,0 +1,172 @@
+package beamSearch;
+
+import languageModel.Scorer;
+
+/**
+ * A class that extends a range of the current candidates of Beam Search by every printable character,
+ * scoring each extension and offering it to its own CandidateSelector. Each worker thread uses its own
+ * instance, so workers never share mutable state while a position is being expanded.
+ * All extensions of a candidate are scored at once by a ScoringKernel before any of them is offered.
+ *
+ * Work that cannot change the result is skipped by bounding the log probability of extensions against the
+ * least probable one the selector keeps once it is full. The candidates are extended from most probable to
+ * least, so once a candidate plus the model's best log probability for both plaintexts falls below it, every
+ * later candidate does too and the range is done. Otherwise a candidate is dropped if its row for the first
+ * plaintext, and then its rows for both, show none of its extensions can be kept, before they are scored.
+ * Since the selector's threshold only ever rises, the extensions kept are exactly those kept without bounds.
+ *
+ * @author Shaquille Momoh
+ */
+public class BeamExpansion implements CandidateExpander {
+
+    // Extensions are only cut when their bound is below the threshold by more than rounding could explain.
+    private static final double PRUNE_SLACK = 1e-9;
+
+    private final int[] printableAscii;
+    private final byte[] ciphertext;
+    private final CandidateSelector selector;
+
+    // The next byte and log probability of each plaintext of the extension being offered.
+    private final byte[] extBytes = new byte[2];
+    private final double[] extScores = new double[2];
+
+    // The log probability of every 7-bit Ascii character following the context of each plaintext of a candidate.
+    private final double[] rowOne = new double[Scorer.ROW_WIDTH];
+    private final double[] rowTwo = new double[Scorer.ROW_WIDTH];
+
+    // The character of the second plaintext of each extension at the current position, and the scores of every
+    // extension of the candidate being extended.
+    private final ScoringKernel kernel = ScoringKernel.create();
+    private final int[] partners;
+    private final double[] scoresOne;
+    private final double[] scoresTwo;
+    private final double[] totals;
+
+    /**
+     * A constructor that creates a worker keeping the top 'pruneNumber' extensions it scores.
+     *
+     * @param printableAscii : The characters each candidate is extended by.
+     * @param ciphertext     : The XOR of the two ciphertexts.
+     * @param pruneNumber    : The number of extensions to keep.
+     */
+    public BeamExpansion(int[] printableAscii, byte[] ciphertext, int pruneNumber) {
+        this.printableAscii = printableAscii;
+        this.ciphertext = ciphertext;
+        this.selector = new CandidateSelector(2, pruneNumber);
+        this.partners = new int[printableAscii.length];
+        this.scoresOne = new double[printableAscii.length];
+        this.scoresTwo = new double[printableAscii.length];
+        this.totals = new double[printableAscii.length];
+    }
+
+    /**
+     * A method that extends the candidates from 'from' (inclusive) to 'to' (exclusive) by every printable
+     * character, keeping the top 'pruneNumber' extensions in this worker's selector.
+     */
+    @Override
+    public void expand(Scorer scorer, Beam candidates, int from, int to, int position, int contextLength,
+                       int pruneNumber) {
+
+        selector.reset(pruneNumber);
+        int cipherByte = ciphertext[position] & 0xFF;
+
+        // By using our character in p_one_next and the character at this position in the ciphertext, we can
+        // obtain the unique candidate for p_two_next, since p_one_next XOR p_two_next must equal the character
+        // of the ciphertext. The partners are beyond the rows only if the ciphertext byte is.
+        for (int ascii = 0; ascii < printableAscii.length; ascii++) {
+            partners[ascii] = printableAscii[ascii] ^ cipherByte;
+        }
+        boolean inRow = cipherByte < Scorer.ROW_WIDTH;
+        double maxLogProb = scorer.maxLogProbability();
+        int extensions = printableAscii.length;
+
+        for (int candNum = from; candNum < to; candNum++) {
+
+            long contextOne = candidates.getContext(candNum, 0);
+            long contextTwo = candidates.getContext(candNum, 1);
+            double probOne = candidates.getScore(candNum, 0);
+            double probTwo = candidates.getScore(candNum, 1);
+            double parentTotal = probOne + probTwo;
+            double threshold = selector.threshold() - PRUNE_SLACK;
+
+            if (parentTotal + 2 * maxLogProb < threshold) {
+                // Every later candidate is less probable, so none of their extensions can be kept either.
+                selector.prune(to - candNum, (long) (to - candNum) * extensions);
+                break;
+            }
+
+            // Every extension of this candidate shares the same contexts, so their rows are looked up once.
+            scorer.scoreRow(contextOne, contextLength, rowOne);
+            double bestOne = best(rowOne, printableAscii);
+            if (parentTotal + bestOne + maxLogProb < threshold) {
+                selector.prune(1, extensions);
+                continue;
+            }
+
+            if (contextTwo == contextOne) {
+                System.arraycopy(rowOne, 0, rowTwo, 0, Scorer.ROW_WIDTH);
+            } else {
+                scorer.scoreRow(contextTwo, contextLength, rowTwo);
+            }
+            if (inRow && parentTotal + bestOne + best(rowTwo, partners) < threshold) {
+                selector.prune(1, extensions);
+                continue;
+            }
+
+            if (inRow) {
+                kernel.score(rowOne, printableAscii, probOne, rowTwo, partners, probTwo, scoresOne, scoresTwo,
+                        totals, printableAscii.length);
+            } else {
+                for (int ascii = 0; ascii < printableAscii.length; ascii++) {
+                    scoresOne[ascii] = probOne + rowOne[printableAscii[ascii]];
+                    scoresTwo[ascii] = probTwo + scorer.logProbability(contextTwo, contextLength, partners[ascii]);
+                    totals[ascii] = scoresOne[ascii] + scoresTwo[ascii];
+                }
+            }
+
+            // For every candidate we extend by one 96 times. Once for each printable Ascii character.
+            int rejected = 0;
+            for (int ascii = 0; ascii < printableAscii.length; ascii++) {
+
+                int p_one_next = printableAscii[ascii];
+                int p_two_next = partners[ascii];
+                double total = totals[ascii];
+                long order = (long) candNum * printableAscii.length + ascii;
+
+                // Extensions that cannot make the top 'pruneNumber' are dropped without being stored.
+                if (!selector.accepts(total, order)) {
+                    rejected++;
+                    continue;
+                }
+
+                extBytes[0] = (byte) p_one_next;
+                extBytes[1] = (byte) p_two_next;
+                extScores[0] = scoresOne[ascii];
+                extScores[1] = scoresTwo[ascii];
+                selector.offer(total, order, Beam.pairKey(candidates, candNum, p_one_next, p_two_next), candNum,
+                        extBytes, extScores, 0);
+            }
+            selector.prune(0, rejected);
+
+        }
+    }
+
+    /**
+     * @return : The most log probability in 'row' of the given characters.
+     */
+    private static double best(double[] row, int[] chars) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (int c : chars) {
+            if (row[c] > best) {
+                best = row[c];
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public CandidateSelector getSelector() {
+        return selector;
+    }
+
+}
@@ -1,25 +1,56 @@
 package beamSearch;
 
-import languageModel.NGramModel;
+import languageModel.Corpus;
+import languageModel.Metrics;
+import languageModel.NGramStore;
+import languageModel.Scorer;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
  * The class responsible for recovering the plaintexts from a random XOR of ciphertexts
- * in the corpus.
+ * in the corpus. A searcher set to more than one thread keeps a pool of them until it is closed.
  *
  * @author Shaquille Momoh
  **/
-public class BeamSearch {
+public class BeamSearch implements AutoCloseable {
 
     private static final int ASCII_LENGTH = 256;
 
     // Creating an array that will hold ascii codes for all printable english ascii characters.
     private static int[] printableAscii = new int[96];
-    private static NGramModel model = new NGramModel();
-    private static Tuple tuple = new Tuple();
+
+    // The fewest candidates worth handing to a worker thread of their own.
+    private static final int MIN_CANDIDATES_PER_WORKER = 64;
+
+    /**
+     * The most times the keystream may have been reused. An extension's place in the generation order, which
+     * breaks ties between equally probable extensions, is its candidate times 96^(k-1) plus the order of its bytes,
+     * and this only fits in a long for every candidate of a beam of up to 'Integer.MAX_VALUE' when k is at most 5.
+     */
+    public static final int MAX_K = 5;
+
+    private static final Metrics.Timer EXPANSION_TIME = Metrics.DEFAULT.timer("beam_expansion_seconds",
+            "Time taken to score the extensions of every candidate at one position.");
+    private static final Metrics.Timer SELECTION_TIME = Metrics.DEFAULT.timer("beam_selection_seconds",
+            "Time taken to merge, sort and store the candidates kept at one position.");
+    private static final Metrics.Histogram WIDTH = Metrics.DEFAULT.histogram("beam_width",
+            "Candidates kept at each position.");
+    private static final Metrics.Counter OFFERED = Metrics.DEFAULT.counter("beam_extensions_offered_total",
+            "Extensions offered to the selectors of the workers.");
+    private static final Metrics.Counter DUPLICATES = Metrics.DEFAULT.counter("beam_duplicates_total",
+            "Extensions offered that were a kept candidate with its plaintexts in another order.");
+    private static final Metrics.Counter PRUNED_CANDIDATES = Metrics.DEFAULT.counter("beam_candidates_pruned_total",
+            "Candidates whose extensions were never scored, since a bound showed none of them could be kept.");
+    private static final Metrics.Counter PRUNED_EXTENSIONS = Metrics.DEFAULT.counter("beam_extensions_pruned_total",
+            "Extensions dropped without being offered, since a bound showed they could not be kept.");
+
+    private int threads = 1;
+    private ForkJoinPool pool;
 
     /**
      * A constructor that initialises the array to hold the ascii codes for all printable english ascii text.
@@ -35,20 +66,6 @@ public class BeamSearch {
         }
     }
 
-    /**
-     * A method that removes duplicate tuples from the given ArrayList.
-     * @param candidates
-     */
-    public void removeDuplicateCandidates(ArrayList<Tuple> candidates) {
-        for (int i = 0; i < candidates.size(); i++) {
-            for (int j = i + 1; j < candidates.size(); j++) {
-                if (tuple.equals(candidates.get(i), candidates.get(j))) {
-                    candidates.remove(j);
-                }
-            }
-        }
-    }
-
     /**
      * A method that encodes a string into an Ascii code represented as a byte array.
      *
@@ -93,6 +110,7 @@ public class BeamSearch {
      * @return : An array from the strings from random positions.
      */
     public static String[] getPlaintextValues(int ptxtLength, int k, String corpus) {
+        checkPlaintextLength(ptxtLength, corpus.length());
         Random rand = new Random();
         String[] plaintexts = new String[k];
         int randVal = 0;
@@ -105,6 +123,50 @@ public class BeamSearch {
         return plaintexts;
     }
 
+    /**
+     * A method that generates k strings from random positions in the given corpus, reading them straight
+     * from its bytes.
+     *
+     * @param ptxtLength : The length of the strings to be generated.
+     * @param k          : The number of strings to be generated.
+     * @param corpus     : The corpus to get the strings from.
+     * @return : An array from the strings from random positons.
+     */
+    public static String[] getPlaintextValues(int ptxtLength, int k, Corpus corpus) {
+        byte[][] bytes = getPlaintextBytes(ptxtLength, k, corpus, new Random());
+        String[] plaintexts = new String[k];
+        for (int i = 0; i < k; i++) {
+            plaintexts[i] = Lattice.decode(bytes[i]);
+        }
+        return plaintexts;
+    }
+
+    /**
+     * A method that copies k plaintexts from random positions in the given corpus, as bytes.
+     *
+     * @param ptxtLength : The length of the plaintexts.
+     * @param k          : The number of plaintexts.
+     * @param corpus     : The corpus to copy the plaintexts from.
+     * @param rand       : The source of the random positions.
+     * @return : The plaintexts, one byte per character.
+     */
+    public static byte[][] getPlaintextBytes(int ptxtLength, int k, Corpus corpus, Random rand) {
+        checkPlaintextLength(ptxtLength, corpus.length());
+        byte[][] plaintexts = new byte[k][ptxtLength];
+        for (int i = 0; i < k; i++) {
+            long randVal = (long) (rand.nextDouble() * (corpus.length() - ptxtLength));
+            corpus.get(randVal, plaintexts[i], 0, ptxtLength);
+        }
+        return plaintexts;
+    }
+
+    private static void checkPlaintextLength(int ptxtLength, long corpusLength) {
+        if (ptxtLength < 1 || ptxtLength >= corpusLength) {
+            throw new IllegalArgumentException("The plaintext length must be between 1 and the length of the corpus (" +
+                    corpusLength + ") but was " + ptxtLength);
+        }
+    }
+
     /**
      * A method to returns the xor of k random plaintexts taken from the corpus.
      * This is then used to test the beam search algorithm.
@@ -116,134 +178,433 @@ public class BeamSearch {
     public static byte[] getXOROfPlaintext(String[] plaintexts, int k) {
 
         byte[][] xorOfPlaintexts = new byte[k][];
-        int ptxtLength = plaintexts[0].length();
 
         for (int i = 0; i < k; i++) {
             xorOfPlaintexts[i] = encodeStringToAscii(plaintexts[i]);
-//            System.out.println("P" + i + " " + plaintexts[i]);
         }
 
-        byte[] ptxtByteArr = new byte[ptxtLength];
+        return getXOROfPlaintext(xorOfPlaintexts);
 
+    }
 
-        for (int i = 0; i < ptxtLength; i++) {
-            byte tmp = 0;
-            for (int j = 0; j < k; j++) {
-                tmp = (byte) (tmp ^ xorOfPlaintexts[j][i]);
+    /**
+     * A method that returns the XOR of plaintexts given as bytes, as long as the first of them.
+     *
+     * @param plaintexts : The plaintexts, one byte per character.
+     * @return : The XOR of the plaintexts.
+     */
+    public static byte[] getXOROfPlaintext(byte[][] plaintexts) {
+        byte[] xor = plaintexts[0].clone();
+        for (int j = 1; j < plaintexts.length; j++) {
+            for (int i = 0; i < xor.length; i++) {
+                xor[i] ^= plaintexts[j][i];
             }
-            ptxtByteArr[i] = tmp;
         }
-
-        return ptxtByteArr;
-
+        return xor;
     }
 
     /**
      * The main algorithm for returning the top (pruneNumber) candidates of plaintexts for the given XOR
      * of ciphertexts.
+     * Candidates are held in a back-pointer lattice, so extending a candidate costs the same at every position
+     * and the full plaintexts are only rebuilt for the final candidates.
      *
-     * @param corpus        : The corpus used to build language models and used in smoothing.
-     * @param ngramArr      : A HashMap containing all ngrams for given corpus, to be used in smoothing.
-     * @param languageModel : The language model containing the probability of all ngrams from a corpus.
-     * @param n             : The maximum size of ngrams to be stored in the language model.
-     * @param pruneNumber   : The number to prune each subsequent candidate list down to.
-     * @param ciphertext    : The XOR of two ciphertexts, of which we are trying to recover the plaintexts.
+     * @param scorer      : The language model giving the log probability of the next character of a plaintext.
+     * @param n           : The maximum size of ngrams to be stored in the language model.
+     * @param pruneNumber : The number to prune each subsequent candidate list down to.
+     * @param ciphertext  : The XOR of two ciphertexts, of which we are trying to recover the plaintexts.
      * @return candidates : The list of top candidate ciphertexts returned as a result of the algorithm.
      **/
-    public ArrayList<Tuple> beamSearch(String corpus, Map<String, Integer>[] ngramArr, HashMap<String,
-            Double> languageModel, int n, int pruneNumber, byte[] ciphertext) {
+    public ArrayList<Tuple> beamSearch(Scorer scorer, int n, int pruneNumber, byte[] ciphertext) {
 
+        // One worker per thread, each keeping the top 'pruneNumber' extensions of its share of the candidates.
+        CandidateExpander[] workers = new CandidateExpander[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new BeamExpansion(printableAscii, ciphertext, pruneNumber);
+        }
 
-        // Adding the log probability of the empty string to the language model.
-        // This is always 1.0 since every string starts from the empty string.
-        Double emptyStringProb = 1.0;
-        languageModel.put("", emptyStringProb);
+        Lattice lattice = new Lattice(2);
+        Beam candidates = search(scorer, n, pruneNumber, ciphertext.length, workers, lattice, null);
+        return getCandidates(lattice, candidates);
 
-        // The two candidate strings to be used repeatedly in the algorithm.
-        String plaintext_one;
-        String plaintext_two;
-        char p_one_next;
-        char p_two_next;
-        int vocabSize = model.getVocabSize(ngramArr);
+    }
 
+    /**
+     * The main algorithm generalised to a keystream reused k times, where 'ciphertext' is the XOR of all k
+     * ciphertexts. Each candidate holds k plaintexts: the bytes of the first k-1 are chosen and the byte of the
+     * last is derived from the XOR, and only combinations whose derived byte is printable are kept.
+     *
+     * @param scorer      : The language model giving the log probability of the next character of a plaintext.
+     * @param n           : The maximum size of ngrams to be stored in the language model.
+     * @param pruneNumber : The number to prune each subsequent candidate list down to.
+     * @param ciphertext  : The XOR of the k ciphertexts.
+     * @param k           : The number of times the keystream was reused, from 2 to 'MAX_K'.
+     * @return : The list of top candidates, from most probable to least.
+     */
+    public ArrayList<PlaintextCandidate> beamSearch(Scorer scorer, int n, int pruneNumber, byte[] ciphertext,
+                                                    int k) {
+        return beamSearch(scorer, n, pruneNumber, ciphertext, k, null);
+    }
 
+    /**
+     * The main algorithm for a keystream reused k times, keeping as many candidates at each position as the given
+     * beam width chooses rather than a fixed number. The widths chosen can be read from it afterwards.
+     *
+     * @param scorer     : The language model giving the log probability of the next character of a plaintext.
+     * @param n          : The maximum size of ngrams to be stored in the language model.
+     * @param width      : Chooses the number of candidates kept at each position.
+     * @param ciphertext : The XOR of the k ciphertexts.
+     * @param k          : The number of times the keystream was reused.
+     * @return : The list of top candidates, from most probable to least.
+     */
+    public ArrayList<PlaintextCandidate> beamSearch(Scorer scorer, int n, BeamWidth width, byte[] ciphertext,
+                                                    int k) {
+        return beamSearch(scorer, n, width.getMaxWidth(), ciphertext, k, width);
+    }
 
-        // The ArrayList to hold all the candidates of plaintexts.
-        ArrayList<Tuple> candidates = new ArrayList<Tuple>();
+    private ArrayList<PlaintextCandidate> beamSearch(Scorer scorer, int n, int pruneNumber, byte[] ciphertext,
+                                                     int k, BeamWidth widths) {
+        checkK(k);
 
-        // Setting all the candidates to initially have empty strings and 0 log probability.
-        for (int ascii = 0; ascii < printableAscii.length; ascii++) {
-            candidates.add(new Tuple("", "", Math.log(emptyStringProb), Math.log(emptyStringProb)));
+        CandidateExpander[] workers = new CandidateExpander[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = k == 2 ? new BeamExpansion(printableAscii, ciphertext, pruneNumber)
+                    : new MultiStreamExpansion(printableAscii, ciphertext, k, pruneNumber);
         }
 
-        // The main loop controlling the building of the candidates.
-        // All candidates, when completed, should be the length of the ciphertext.
-        for (int position = 0; position < ciphertext.length; position++) {
+        Lattice lattice = new Lattice(k);
+        Beam candidates = search(scorer, n, pruneNumber, ciphertext.length, workers, lattice, widths);
 
-            // A temporary ArrayList to store all possible candidates before pruning
-            // for top 'pruneNumber' candidates.
-            ArrayList<Tuple> temp = new ArrayList<Tuple>();
+        ArrayList<PlaintextCandidate> results = new ArrayList<>(candidates.size());
+        for (int candNum = 0; candNum < candidates.size(); candNum++) {
+            byte[][] plaintexts = lattice.reconstruct(candNum);
+            double[] probabilities = new double[k];
+            for (int s = 0; s < k; s++) {
+                probabilities[s] = candidates.getScore(candNum, s);
+            }
+            results.add(new PlaintextCandidate(plaintexts, probabilities));
+        }
+        return results;
+    }
 
-            for (int candNum = 0; candNum < candidates.size(); candNum++) {
+    private static void checkK(int k) {
+        if (k < 2 || k > MAX_K) {
+            throw new IllegalArgumentException("The keystream must be reused between 2 and " + MAX_K +
+                    " times but k was " + k);
+        }
+    }
 
-                Tuple t = (candidates.get(candNum));
+    /**
+     * A method that starts a search that is fed the XOR of the ciphertexts a chunk at a time, and hands back each
+     * part of the plaintexts as soon as every candidate agrees on it. See 'BeamStream'.
+     *
+     * @param scorer      : The language model giving the log probability of the next character of a plaintext.
+     * @param n           : The maximum size of ngrams to be stored in the language model.
+     * @param pruneNumber : The number to prune each subsequent candidate list down to.
+     * @param k           : The number of times the keystream was reused.
+     * @param maxLag      : The most positions the candidates may disagree on before the most probable one is
+     *                      followed, at least 2.
+     * @return : The stream, which has not been fed any bytes.
+     */
+    public BeamStream stream(Scorer scorer, int n, int pruneNumber, int k, int maxLag) {
+        checkK(k);
+        if (maxLag < 2) {
+            throw new IllegalArgumentException("The lag must be at least 2 but was " + maxLag);
+        }
 
-                // For every candidate in 'candidates' we extend by one 256 times. Once for each Ascii character.
-                // We then sort and keep the best 'pruneNumber' candidates before repeating.
-                for (int ascii = 0; ascii < printableAscii.length; ascii++) {
+        // The workers read the byte of the position being searched from this array, which the stream updates.
+        byte[] current = new byte[1];
+        CandidateExpander[] workers = new CandidateExpander[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = k == 2 ? new BeamExpansion(printableAscii, current, pruneNumber)
+                    : new MultiStreamExpansion(printableAscii, current, k, pruneNumber);
+        }
+        return new BeamStream(this, scorer, n, pruneNumber, k, maxLag, current, workers);
+    }
 
-                    p_one_next = (char) printableAscii[ascii];
+    /**
+     * A method that recovers the plaintexts of several ciphertexts encrypted with the same keystream, searching
+     * over all of them together. Each candidate only chooses the plaintext of the longest ciphertext, from which
+     * the plaintexts of the others follow, so a byte that is certain in one plaintext fixes the keystream byte
+     * for all of them.
+     *
+     * @param scorer      : The language model giving the log probability of the next character of a plaintext.
+     * @param n           : The maximum size of ngrams to be stored in the language model.
+     * @param pruneNumber : The number to prune each subsequent candidate list down to.
+     * @param ciphertexts : The ciphertexts, which may differ in length.
+     * @return : The list of top candidates, from most probable to least, with the plaintexts in the order of the
+     * ciphertexts.
+     */
+    public ArrayList<PlaintextCandidate> jointSearch(Scorer scorer, int n, int pruneNumber, byte[][] ciphertexts) {
+        int streams = ciphertexts.length;
+        if (streams < 2) {
+            throw new IllegalArgumentException("At least 2 ciphertexts are needed but there were " + streams);
+        }
+
+        // The longest ciphertext is the reference, searched as stream 0.
+        int reference = 0;
+        for (int i = 1; i < streams; i++) {
+            if (ciphertexts[i].length > ciphertexts[reference].length) {
+                reference = i;
+            }
+        }
+        byte[][] ordered = new byte[streams][];
+        int[] streamOf = new int[streams];
+        ordered[0] = ciphertexts[reference];
+        streamOf[reference] = 0;
+        for (int i = 0, s = 1; i < streams; i++) {
+            if (i != reference) {
+                ordered[s] = ciphertexts[i];
+                streamOf[i] = s++;
+            }
+        }
+
+        CandidateExpander[] workers = new CandidateExpander[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new JointExpansion(printableAscii, ordered, pruneNumber);
+        }
+
+        Lattice lattice = new Lattice(streams);
+        Beam candidates = search(scorer, n, pruneNumber, ordered[0].length, workers, lattice, null);
+
+        ArrayList<PlaintextCandidate> results = new ArrayList<>(candidates.size());
+        for (int candNum = 0; candNum < candidates.size(); candNum++) {
+            byte[][] plaintexts = lattice.reconstruct(candNum);
+            byte[][] trimmed = new byte[streams][];
+            double[] probabilities = new double[streams];
+            for (int i = 0; i < streams; i++) {
+                int s = streamOf[i];
+                trimmed[i] = Arrays.copyOf(plaintexts[s], ciphertexts[i].length);
+                probabilities[i] = candidates.getScore(candNum, s);
+            }
+            results.add(new PlaintextCandidate(trimmed, probabilities));
+        }
+        return results;
+    }
 
+    /**
+     * A method that runs Beam Search over every position of the ciphertext, recording the candidates kept at each
+     * position in the lattice. The workers know the ciphertext bytes of each position.
+     *
+     * @param length : The number of positions to search.
+     * @param widths : Chooses the number of candidates kept at each position, or null to keep 'pruneNumber'.
+     * @return : The candidates at the last position, from most probable to least.
+     */
+    private Beam search(Scorer scorer, int n, int pruneNumber, int length, CandidateExpander[] workers,
+                        Lattice lattice, BeamWidth widths) {
+
+        int streams = lattice.getStreams();
+        long contextMask = NGramStore.mask(n - 1);
+
+        // The candidates at the current position, and the candidates being built for the next position.
+        // Every candidate starts from the empty strings with a log probability of 0.
+        Beam candidates = new Beam(streams, pruneNumber);
+        Beam next = new Beam(streams, pruneNumber);
+        candidates.setRoot();
+        if (widths != null) {
+            widths.start(length);
+        }
 
-                    // By using our character in p_one_next and the character at 'position' in the ciphertext, we can
-                    // obtain the unique candidate for p_two_next, since p_one_next XOR p_two_next must equal the
-                    // character of the ciphertext at 'position'.
-                    p_two_next = (char) (printableAscii[ascii] ^ ciphertext[position]);
+        // The selector the workers are merged into.
+        CandidateSelector merged = new CandidateSelector(streams, pruneNumber);
 
-                    // Concatenating our two candidate plaintexts with the next character.
-                    plaintext_one = t.getPlaintextOne() + p_one_next;
-                    plaintext_two = t.getPlaintextTwo() + p_two_next;
+        // The main loop controlling the building of the candidates.
+        // All candidates, when completed, should be the length of the ciphertext.
+        for (int position = 0; position < length; position++) {
 
-                    // Calculating the probability of each plaintext in the current candidate and storing themm in
-                    // an array.
-                    Double[] candProb = model.calculateCandidateProbability(n, corpus, ngramArr, languageModel, t,
-                            plaintext_one, plaintext_two, vocabSize);
+            step(scorer, pruneNumber, workers, merged, candidates, next, position, Math.min(position, n - 1),
+                    contextMask, lattice, widths);
 
+            Beam tmp = candidates;
+            candidates = next;
+            next = tmp;
 
-                    temp.add(new Tuple(plaintext_one, plaintext_two, candProb[0], candProb[1]));
+        }
 
-                }
+        return candidates;
+    }
 
+    /**
+     * A method that extends the candidates by the bytes of one position, filling 'next' with the kept extensions
+     * from most probable to least and adding them to the lattice as a new layer.
+     *
+     * @param merged        : The selector the workers are merged into.
+     * @param candidates    : The current candidates.
+     * @param next          : The beam to fill with the candidates of the next position.
+     * @param position      : The position the workers read the ciphertext bytes of.
+     * @param contextLength : The length of the context of the next character.
+     * @param contextMask   : The mask keeping the last n-1 bytes of a context.
+     * @param widths        : Chooses how many of the extensions to keep, or null to keep all of them.
+     */
+    void step(Scorer scorer, int pruneNumber, CandidateExpander[] workers, CandidateSelector merged,
+              Beam candidates, Beam next, int position, int contextLength, long contextMask, Lattice lattice,
+              BeamWidth widths) {
+
+        int streams = lattice.getStreams();
+        long start = System.nanoTime();
+        int chunks = expandAll(workers, scorer, candidates, position, contextLength, pruneNumber);
+        long expanded = System.nanoTime();
+        EXPANSION_TIME.record(expanded - start);
+        CandidateSelector selector = select(workers, chunks, merged, pruneNumber);
+
+        // Building the next candidates from the kept extensions, from most probable to least.
+        int width = selector.sort();
+        if (widths != null) {
+            long offered = 0;
+            for (int w = 0; w < chunks; w++) {
+                offered += workers[w].getSelector().getOffered();
             }
+            width = widths.choose(selector, width, candidates.size(), offered);
+        }
+        int[] layerParents = new int[width];
+        byte[] layerBytes = new byte[width * streams];
+        next.reset(width);
+
+        for (int i = 0; i < width; i++) {
+            int slot = selector.getSorted(i);
+            int parent = selector.getParent(slot);
+            int entry = next.add(candidates, parent, selector.getBytes(), selector.getScores(), slot * streams,
+                    contextMask);
+            layerParents[entry] = parent;
+            System.arraycopy(selector.getBytes(), slot * streams, layerBytes, entry * streams, streams);
+        }
+
+        lattice.addLayer(layerParents, layerBytes, next.size());
+        SELECTION_TIME.since(expanded);
+        WIDTH.record(width);
+    }
+
+    /**
+     * A method that extends every current candidate, splitting the candidates between the workers.
+     * With one worker the extensions are scored on the calling thread. Otherwise each worker scores a contiguous
+     * range of candidates in the fork/join pool.
+     *
+     * @return : The number of workers used.
+     */
+    private int expandAll(final CandidateExpander[] workers, final Scorer scorer, final Beam candidates,
+                          final int position, final int contextLength, final int pruneNumber) {
+
+        final int size = candidates.size();
+        int chunks = Math.min(workers.length, (size + MIN_CANDIDATES_PER_WORKER - 1) / MIN_CANDIDATES_PER_WORKER);
+
+        if (chunks <= 1) {
+            workers[0].expand(scorer, candidates, 0, size, position, contextLength, pruneNumber);
+            return 1;
+        }
 
-            // Sorting the list of candidates by their probability.
-            Collections.sort(temp, new Comparator<Tuple>() {
+        final int chunkCount = chunks;
+        List<RecursiveAction> tasks = new ArrayList<>(chunks);
+        for (int w = 0; w < chunks; w++) {
+            final int worker = w;
+            tasks.add(new RecursiveAction() {
                 @Override
-                public int compare(Tuple t1, Tuple t2) {
-                    Double t1_perc = t1.getProbOne() + t1.getProbTwo();
-                    Double t2_perc = t2.getProbOne() + t2.getProbTwo();
-                    return Double.compare(t1_perc, t2_perc);
+                protected void compute() {
+                    int from = (int) ((long) size * worker / chunkCount);
+                    int to = (int) ((long) size * (worker + 1) / chunkCount);
+                    workers[worker].expand(scorer, candidates, from, to, position, contextLength, pruneNumber);
                 }
-
             });
+        }
+        getPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        return chunks;
+    }
 
-            // Putting the list in descending order - from most probable to least.
-            Collections.reverse(temp);
+    /**
+     * A method that collects the extensions kept by the workers used at a position. The selectors of several
+     * workers are merged in order, which keeps exactly the same candidates as the serial path since ties are
+     * broken by generation order.
+     *
+     * @param chunks : The number of workers used.
+     * @return : The selector holding the top 'pruneNumber' extensions.
+     */
+    private CandidateSelector select(CandidateExpander[] workers, int chunks, CandidateSelector merged,
+                                     int pruneNumber) {
+        long offered = 0;
+        long duplicates = 0;
+        long prunedCandidates = 0;
+        long prunedExtensions = 0;
+        for (int w = 0; w < chunks; w++) {
+            CandidateSelector local = workers[w].getSelector();
+            offered += local.getOffered();
+            duplicates += local.getDuplicates();
+            prunedCandidates += local.getPrunedCandidates();
+            prunedExtensions += local.getPrunedExtensions();
+        }
+        OFFERED.add(offered);
+        DUPLICATES.add(duplicates);
+        PRUNED_CANDIDATES.add(prunedCandidates);
+        PRUNED_EXTENSIONS.add(prunedExtensions);
 
-            // Removing duplicates from the list of all candidates before it is pruned.
-            removeDuplicateCandidates(temp);
+        if (chunks == 1) {
+            return workers[0].getSelector();
+        }
 
-            // Setting 'candidates' to be the top 'pruneNumber' plaintext candidates but only if the .
-            if (pruneNumber < temp.size()) {
-                temp = new ArrayList<>(temp.subList(0, pruneNumber));
+        merged.reset(pruneNumber);
+        for (int w = 0; w < chunks; w++) {
+            CandidateSelector local = workers[w].getSelector();
+            int kept = local.sort();
+            for (int i = 0; i < kept; i++) {
+                merged.offer(local, local.getSorted(i));
             }
+        }
+        return merged;
+    }
 
-            candidates = temp;
+    /**
+     * A method that sets the number of threads used to extend the candidates at each position.
+     *
+     * @param threads : The number of threads, for example from 'Split.getThreadNumber'.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1 but was " + threads);
+        }
+        if (threads != this.threads && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.threads = threads;
+    }
 
+    /**
+     * A method that shuts down the threads of the parallel search, if it started any. A closed searcher may still
+     * be used, and starts new threads if it needs them.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
         }
+    }
 
-        return candidates;
+    private ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
 
+    /**
+     * A method that rebuilds the plaintexts of the final candidates from the lattice.
+     *
+     * @param lattice    : The lattice holding every position of the search.
+     * @param candidates : The candidates at the last position.
+     * @return : The list of candidates, with their plaintexts and log probabilities.
+     */
+    private ArrayList<Tuple> getCandidates(Lattice lattice, Beam candidates) {
+        ArrayList<Tuple> tuples = new ArrayList<>(candidates.size());
+        for (int candNum = 0; candNum < candidates.size(); candNum++) {
+            byte[][] plaintexts = lattice.reconstruct(candNum);
+            tuples.add(new Tuple(plaintexts[0], plaintexts[1], candidates.getScore(candNum, 0),
+                    candidates.getScore(candNum, 1)));
+        }
+        return tuples;
     }
 
 
@@ -0,0 +1,202 @@
+package beamSearch;
+
+import languageModel.Metrics;
+import languageModel.NGramStore;
+import languageModel.Scorer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class that runs Beam Search over a XOR of ciphertexts that arrives a chunk at a time, such as captured
+ * traffic, keeping the candidates between chunks. After each chunk the lattice is checked for the first positions
+ * every candidate agrees on. Those positions can no longer change, so their bytes are handed back and their
+ * layers released, and the memory used depends on how far back the candidates disagree rather than on the length
+ * of the stream.
+ *
+ * Candidates that still disagree on more than 'maxLag' positions are cut back to the ones that agree with the
+ * most probable candidate on all but the last 'maxLag / 2' positions. This bounds the memory on any input, at the
+ * cost of following the most probable candidate where the language model could not decide. Such cuts are common
+ * for pairs, since a candidate holding the plaintexts swapped before some position is often nearly as probable as
+ * the one holding them in order, so the two rarely die out by themselves. Without cuts the bytes handed back are
+ * the ones the whole search would have chosen, but for rounding in the log probabilities taken out on commits.
+ *
+ * Streams are created by 'BeamSearch.stream'.
+ *
+ * @author Shaquille Momoh
+ */
+public class BeamStream {
+
+    private static final Metrics.Counter COMMITTED = Metrics.DEFAULT.counter("stream_committed_bytes_total",
+            "Positions of a stream whose bytes every candidate agreed on.");
+    private static final Metrics.Counter FORCED = Metrics.DEFAULT.counter("stream_forced_commits_total",
+            "Times the candidates of a stream disagreed for too long and were cut back to the most probable one.");
+    private static final Metrics.Histogram LAG = Metrics.DEFAULT.histogram("stream_lag",
+            "Positions of a stream the candidates still disagreed on after each chunk.");
+
+    private final BeamSearch beam;
+    private final Scorer scorer;
+    private final int n;
+    private final int pruneNumber;
+    private final int streams;
+    private final int maxLag;
+    private final long contextMask;
+
+    // The byte of the position being searched, which the workers read, and the workers themselves.
+    private final byte[] current;
+    private final CandidateExpander[] workers;
+    private final CandidateSelector merged;
+
+    private final Lattice lattice;
+    private Beam candidates;
+    private Beam next;
+
+    // The log probability of each plaintext taken out of every candidate when bytes were committed.
+    private final double[] offsets;
+    private final double[] shift;
+
+    private long position;
+    private long committed;
+
+    BeamStream(BeamSearch beam, Scorer scorer, int n, int pruneNumber, int k, int maxLag, byte[] current,
+               CandidateExpander[] workers) {
+        this.beam = beam;
+        this.scorer = scorer;
+        this.n = n;
+        this.pruneNumber = pruneNumber;
+        this.streams = k;
+        this.maxLag = maxLag;
+        this.contextMask = NGramStore.mask(n - 1);
+        this.current = current;
+        this.workers = workers;
+        this.merged = new CandidateSelector(k, pruneNumber);
+        this.lattice = new Lattice(k);
+        this.candidates = new Beam(k, pruneNumber);
+        this.next = new Beam(k, pruneNumber);
+        this.offsets = new double[k];
+        this.shift = new double[k];
+        candidates.setRoot();
+    }
+
+    /**
+     * A method that searches the next bytes of the XOR of the ciphertexts.
+     *
+     * @param xor    : The array holding the bytes.
+     * @param offset : The index of the first byte.
+     * @param length : The number of bytes.
+     * @return : The bytes of each plaintext that every candidate now agrees on, following the bytes returned
+     * before. They may be empty.
+     */
+    public byte[][] feed(byte[] xor, int offset, int length) {
+        List<byte[][]> released = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            current[0] = xor[offset + i];
+            beam.step(scorer, pruneNumber, workers, merged, candidates, next, 0, (int) Math.min(position, n - 1),
+                    contextMask, lattice, null);
+            Beam tmp = candidates;
+            candidates = next;
+            next = tmp;
+            position++;
+
+            if (lattice.length() > maxLag) {
+                released.add(commit());
+                // Cut down to half the lag, so the lattice is not walked again for at least maxLag / 2 bytes.
+                if (lattice.length() > maxLag / 2) {
+                    cut(lattice.length() - maxLag / 2);
+                    released.add(commit());
+                }
+            }
+        }
+        released.add(commit());
+        LAG.record(lattice.length());
+        return concatenate(released);
+    }
+
+    /**
+     * A method that releases the layers every candidate agrees on, taking the log probability of the most probable
+     * candidate out of every candidate so the log probabilities of a long stream stay small.
+     *
+     * @return : The bytes of each plaintext released.
+     */
+    private byte[][] commit() {
+        int layers = lattice.convergedLayers();
+        if (layers == 0) {
+            return new byte[streams][0];
+        }
+        byte[][] bytes = lattice.release(layers);
+        committed += layers;
+        COMMITTED.add(layers);
+
+        for (int s = 0; s < streams; s++) {
+            shift[s] = candidates.getScore(0, s);
+            offsets[s] += shift[s];
+        }
+        candidates.shift(shift);
+        return bytes;
+    }
+
+    /**
+     * A method that keeps only the candidates that agree with the most probable one on the first 'layers' layers.
+     */
+    private void cut(int layers) {
+        int[] ancestors = lattice.ancestors(layers - 1);
+        int[] kept = new int[ancestors.length];
+        int count = 0;
+        for (int entry = 0; entry < ancestors.length; entry++) {
+            if (ancestors[entry] == ancestors[0]) {
+                kept[count++] = entry;
+            }
+        }
+        lattice.retainLast(kept, count);
+        candidates.retain(kept, count);
+        FORCED.increment();
+    }
+
+    private byte[][] concatenate(List<byte[][]> parts) {
+        int length = 0;
+        for (byte[][] part : parts) {
+            length += part[0].length;
+        }
+        byte[][] bytes = new byte[streams][length];
+        int at = 0;
+        for (byte[][] part : parts) {
+            for (int s = 0; s < streams; s++) {
+                System.arraycopy(part[s], 0, bytes[s], at, part[s].length);
+            }
+            at += part[0].length;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return : The current candidates, from most probable to least, holding only the bytes after those that have
+     * been returned by 'feed'. Their log probabilities are those of the whole plaintexts.
+     */
+    public ArrayList<PlaintextCandidate> getCandidates() {
+        ArrayList<PlaintextCandidate> results = new ArrayList<>(candidates.size());
+        for (int candNum = 0; candNum < candidates.size(); candNum++) {
+            byte[][] plaintexts = lattice.length() == 0 ? new byte[streams][0] : lattice.reconstruct(candNum);
+            double[] probabilities = new double[streams];
+            for (int s = 0; s < streams; s++) {
+                probabilities[s] = candidates.getScore(candNum, s) + offsets[s];
+            }
+            results.add(new PlaintextCandidate(plaintexts, probabilities));
+        }
+        return results;
+    }
+
+    /**
+     * @return : The number of bytes fed to the stream.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return : The number of bytes of each plaintext returned by 'feed' so far.
+     */
+    public long getCommitted() {
+        return committed;
+    }
+
+}
@@ -0,0 +1,159 @@
+package beamSearch;
+
+import languageModel.Metrics;
+
+import java.util.Arrays;
+
+/**
+ * A class that chooses how many candidates Beam Search keeps at each position, instead of always keeping the same
+ * number. At a position where the few most probable candidates are far more probable than the rest, keeping the
+ * rest is mostly wasted work, while at a position the language model cannot decide, a fixed width may drop the
+ * right candidate. So every candidate whose log probability is within 'margin' of the most probable one is kept,
+ * but never fewer than 'minWidth' or more than 'maxWidth'.
+ *
+ * A budget may also be set on the extensions scored in one search. The width is then held to what the rest of the
+ * budget allows for the rest of the positions, given the extensions scored per candidate so far, though never
+ * below 'minWidth'.
+ *
+ * A BeamWidth keeps the widths chosen in the last search it was used in, so each search running at the same time
+ * needs its own. A margin of 'Double.POSITIVE_INFINITY' with equal bounds keeps the same candidates as a fixed
+ * prune number.
+ *
+ * @author Shaquille Momoh
+ */
+public class BeamWidth {
+
+    private static final Metrics.Counter BUDGET_LIMITED = Metrics.DEFAULT.counter("beam_width_budget_limited_total",
+            "Positions whose width was lowered to keep a search within its budget of scored extensions.");
+
+    private final double margin;
+    private final int minWidth;
+    private final int maxWidth;
+    private long budget;
+
+    // The widths chosen at each position of the last search, and the work it took.
+    private int[] widths = new int[0];
+    private int positions;
+    private long scored;
+    private long expanded;
+
+    /**
+     * A constructor that creates a beam width.
+     *
+     * @param margin   : The most a kept candidate's log probability may be below the most probable one's.
+     * @param minWidth : The fewest candidates kept, at least 1.
+     * @param maxWidth : The most candidates kept, at least 'minWidth'.
+     */
+    public BeamWidth(double margin, int minWidth, int maxWidth) {
+        if (!(margin >= 0)) {
+            throw new IllegalArgumentException("The margin must not be negative but was " + margin);
+        }
+        if (minWidth < 1 || maxWidth < minWidth) {
+            throw new IllegalArgumentException("The widths must satisfy 1 <= minWidth <= maxWidth but were " +
+                    minWidth + " and " + maxWidth);
+        }
+        this.margin = margin;
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+    }
+
+    /**
+     * A method that limits the extensions scored in each search.
+     *
+     * @param budget : The most extensions scored in one search, or 0 for no limit.
+     */
+    public void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("The budget must not be negative but was " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * A method that starts a search of the given number of positions.
+     */
+    void start(int length) {
+        widths = new int[length];
+        positions = 0;
+        scored = 0;
+        expanded = 0;
+    }
+
+    /**
+     * A method that chooses how many of the sorted extensions at a position to keep.
+     *
+     * @param selector   : The selector holding the extensions, sorted from most probable to least.
+     * @param sorted     : The number of extensions sorted.
+     * @param candidates : The number of candidates that were extended.
+     * @param offered    : The number of extensions scored and offered to the selectors.
+     * @return : The number of extensions to keep.
+     */
+    int choose(CandidateSelector selector, int sorted, int candidates, long offered) {
+        scored += offered;
+        expanded += candidates;
+
+        int width = 0;
+        if (sorted > 0) {
+            double lowest = selector.getTotal(selector.getSorted(0)) - margin;
+            while (width < sorted && width < maxWidth && selector.getTotal(selector.getSorted(width)) >= lowest) {
+                width++;
+            }
+        }
+        width = Math.max(width, minWidth);
+
+        int remaining = widths.length - positions - 1;
+        if (budget > 0 && remaining > 0 && scored > 0) {
+            // Each kept candidate costs about as many extensions at the next position as the candidates so far.
+            double perCandidate = scored / (double) expanded;
+            long allowed = (long) (Math.max(0, budget - scored) / (remaining * perCandidate));
+            if (allowed < width) {
+                width = (int) Math.max(allowed, minWidth);
+                BUDGET_LIMITED.increment();
+            }
+        }
+
+        width = Math.min(width, sorted);
+        if (positions < widths.length) {
+            widths[positions++] = width;
+        }
+        return width;
+    }
+
+    /**
+     * @return : The number of candidates kept at each position of the last search.
+     */
+    public int[] getWidths() {
+        return Arrays.copyOf(widths, positions);
+    }
+
+    /**
+     * @return : The mean number of candidates kept per position in the last search.
+     */
+    public double getMeanWidth() {
+        long total = 0;
+        for (int i = 0; i < positions; i++) {
+            total += widths[i];
+        }
+        return positions == 0 ? 0 : total / (double) positions;
+    }
+
+    /**
+     * @return : The number of extensions scored and offered to the selectors in the last search.
+     */
+    public long getScored() {
+        return scored;
+    }
+
+    public double getMargin() {
+        return margin;
+    }
+
+    public int getMinWidth() {
+        return minWidth;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+}
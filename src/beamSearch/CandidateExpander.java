@@ -0,0 +1,30 @@
+package beamSearch;
+
+import languageModel.Scorer;
+
+/**
+ * An interface for the workers of Beam Search that extend a range of the current candidates by one byte per
+ * plaintext, keeping the most probable extensions in their own CandidateSelector.
+ *
+ * @author Shaquille Momoh
+ */
+public interface CandidateExpander {
+
+    /**
+     * A method that extends the candidates from 'from' (inclusive) to 'to' (exclusive), keeping the top
+     * 'pruneNumber' extensions in this worker's selector.
+     *
+     * @param scorer        : The language model giving the log probability of the next character.
+     * @param candidates    : The current candidates.
+     * @param from          : The first candidate to extend.
+     * @param to            : The candidate after the last one to extend.
+     * @param position      : The position of the bytes being chosen.
+     * @param contextLength : The length of the context of the next character.
+     * @param pruneNumber   : The number of extensions to keep.
+     */
+    void expand(Scorer scorer, Beam candidates, int from, int to, int position, int contextLength,
+                int pruneNumber);
+
+    CandidateSelector getSelector();
+
+}
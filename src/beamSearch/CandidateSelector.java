@@ -0,0 +1,389 @@
+package beamSearch;
+
+import java.util.Arrays;
+
+/**
+ * A class that keeps the top candidates offered to it during one position of Beam Search.
+ * Candidates are held in a fixed-size min-heap keyed on their combined log probability, so the least
+ * probable candidate kept so far can be replaced in O(log P) and candidates that cannot make the top
+ * P are rejected without being stored. Candidates that are the same as a kept candidate with their
+ * plaintexts swapped are detected through a hash table of their keys.
+ * Ties in log probability are broken by the order in which extensions are generated (lower first), so
+ * the candidates kept do not depend on the order they are offered in.
+ *
+ * @author Shaquille Momoh
+ */
+public class CandidateSelector {
+
+    private final int streams;
+    private int capacity;
+    private int size;
+
+    // The payload of each slot: the combined log probability, the generation order, the duplicate key,
+    // the parent, and the byte and log probability of every plaintext.
+    private double[] totals;
+    private long[] orders;
+    private long[] keys;
+    private int[] parents;
+    private byte[] bytes;
+    private double[] scores;
+
+    // A min-heap of slots (least probable first), and the position of each slot in the heap.
+    private int[] heap;
+    private int[] heapPos;
+
+    // An open-addressed table from duplicate key to slot, for the candidates in the heap.
+    private long[] tableKeys;
+    private int[] tableSlots;
+    private int tableMask;
+
+    // The slots sorted from most probable to least, filled in by 'sort'.
+    private int[] sorted;
+
+    // The candidates offered since the last reset, and how many of them duplicated a kept candidate.
+    private long offered;
+    private long duplicates;
+
+    // The candidates whose extensions were never scored, and the extensions never offered, because a bound on
+    // their log probability showed they could not be kept.
+    private long prunedCandidates;
+    private long prunedExtensions;
+
+    /**
+     * A constructor that creates a selector keeping at most 'capacity' candidates.
+     *
+     * @param streams  : The number of plaintexts each candidate holds.
+     * @param capacity : The number of candidates to keep (the prune number).
+     */
+    public CandidateSelector(int streams, int capacity) {
+        this.streams = streams;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        totals = new double[capacity];
+        orders = new long[capacity];
+        keys = new long[capacity];
+        parents = new int[capacity];
+        bytes = new byte[capacity * streams];
+        scores = new double[capacity * streams];
+        heap = new int[capacity];
+        heapPos = new int[capacity];
+        sorted = new int[capacity];
+
+        int tableSize = 16;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        tableKeys = new long[tableSize];
+        tableSlots = new int[tableSize];
+        tableMask = tableSize - 1;
+        Arrays.fill(tableSlots, -1);
+    }
+
+    /**
+     * A method that empties the selector so it can be used for the next position.
+     *
+     * @param capacity : The number of candidates to keep.
+     */
+    public void reset(int capacity) {
+        if (capacity != this.capacity) {
+            allocate(capacity);
+        } else {
+            for (int i = 0; i < size; i++) {
+                removeKey(keys[heap[i]]);
+            }
+        }
+        size = 0;
+        offered = 0;
+        duplicates = 0;
+        prunedCandidates = 0;
+        prunedExtensions = 0;
+    }
+
+    /**
+     * A method that checks whether a candidate would currently be kept, so the caller can skip building it.
+     *
+     * @param total : The combined log probability of the candidate.
+     * @param order : The generation order of the candidate.
+     * @return : True if the candidate ranks above the least probable candidate kept, or the selector is not full.
+     */
+    public boolean accepts(double total, long order) {
+        if (size < capacity) {
+            return true;
+        }
+        int worst = heap[0];
+        return total > totals[worst] || (total == totals[worst] && order < orders[worst]);
+    }
+
+    /**
+     * @return : The combined log probability a candidate must beat to be kept, or negative infinity if the
+     * selector is not full yet.
+     */
+    public double threshold() {
+        return size < capacity ? Double.NEGATIVE_INFINITY : totals[heap[0]];
+    }
+
+    /**
+     * A method that offers a candidate to the selector. It is kept if it ranks in the top 'capacity' candidates
+     * offered so far, and replaces a kept duplicate if it ranks above it.
+     *
+     * @param total       : The combined log probability of the candidate.
+     * @param order       : The generation order of the candidate, used to break ties.
+     * @param key         : The key identifying the candidate regardless of the order of its plaintexts.
+     * @param parent      : The index of the candidate's parent.
+     * @param nextBytes   : The byte chosen for each plaintext, 'streams' bytes starting at 'offset'.
+     * @param nextScores  : The log probability of each plaintext, 'streams' values starting at 'offset'.
+     * @param offset      : The offset of the candidate in 'nextBytes' and 'nextScores'.
+     * @return : True if the candidate was kept.
+     */
+    public boolean offer(double total, long order, long key, int parent, byte[] nextBytes, double[] nextScores,
+                         int offset) {
+        if (capacity == 0) {
+            return false;
+        }
+        offered++;
+
+        int duplicate = findKey(key);
+        if (duplicate >= 0) {
+            duplicates++;
+            if (!ranksAbove(total, order, duplicate)) {
+                return false;
+            }
+            set(duplicate, total, order, key, parent, nextBytes, nextScores, offset);
+            siftDown(heapPos[duplicate]);
+            return true;
+        }
+
+        if (size < capacity) {
+            // The selector is not full, so the candidate takes the next free slot at the bottom of the heap.
+            int slot = size;
+            heap[size] = slot;
+            heapPos[slot] = size;
+            size++;
+            set(slot, total, order, key, parent, nextBytes, nextScores, offset);
+            putKey(key, slot);
+            siftUp(heapPos[slot]);
+            return true;
+        }
+
+        // Otherwise the candidate replaces the least probable candidate at the top of the heap.
+        int slot = heap[0];
+        if (!ranksAbove(total, order, slot)) {
+            return false;
+        }
+        removeKey(keys[slot]);
+        set(slot, total, order, key, parent, nextBytes, nextScores, offset);
+        putKey(key, slot);
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * A method that offers a candidate kept by another selector, used to merge the selectors of parallel workers.
+     *
+     * @param other : The selector holding the candidate.
+     * @param slot  : The slot of the candidate in 'other'.
+     * @return : True if the candidate was kept.
+     */
+    public boolean offer(CandidateSelector other, int slot) {
+        return offer(other.totals[slot], other.orders[slot], other.keys[slot], other.parents[slot], other.bytes,
+                other.scores, slot * streams);
+    }
+
+    /**
+     * A method that sorts the kept candidates from most probable to least, emptying the heap.
+     * The slots can then be read with 'getSorted'.
+     *
+     * @return : The number of candidates kept.
+     */
+    public int sort() {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            int worst = heap[0];
+            sorted[i] = worst;
+            removeKey(keys[worst]);
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                heapPos[heap[0]] = 0;
+                siftDown(0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return : The number of candidates offered since the last reset.
+     */
+    public long getOffered() {
+        return offered;
+    }
+
+    /**
+     * @return : The number of candidates offered since the last reset that had the same key as a kept candidate.
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * A method that records work skipped by the caller because it could not beat 'threshold'.
+     *
+     * @param candidates : The number of candidates none of whose extensions were scored.
+     * @param extensions : The number of extensions dropped without being offered, including those of 'candidates'.
+     */
+    public void prune(long candidates, long extensions) {
+        prunedCandidates += candidates;
+        prunedExtensions += extensions;
+    }
+
+    /**
+     * @return : The number of candidates since the last reset none of whose extensions were scored.
+     */
+    public long getPrunedCandidates() {
+        return prunedCandidates;
+    }
+
+    /**
+     * @return : The number of extensions since the last reset that were dropped without being offered.
+     */
+    public long getPrunedExtensions() {
+        return prunedExtensions;
+    }
+
+    public int getSorted(int i) {
+        return sorted[i];
+    }
+
+    public int getParent(int slot) {
+        return parents[slot];
+    }
+
+    public double getTotal(int slot) {
+        return totals[slot];
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public double[] getScores() {
+        return scores;
+    }
+
+    private void set(int slot, double total, long order, long key, int parent, byte[] nextBytes,
+                     double[] nextScores, int offset) {
+        totals[slot] = total;
+        orders[slot] = order;
+        keys[slot] = key;
+        parents[slot] = parent;
+        System.arraycopy(nextBytes, offset, bytes, slot * streams, streams);
+        System.arraycopy(nextScores, offset, scores, slot * streams, streams);
+    }
+
+    private boolean ranksAbove(double total, long order, int slot) {
+        return total > totals[slot] || (total == totals[slot] && order < orders[slot]);
+    }
+
+    private boolean worse(int a, int b) {
+        return totals[a] < totals[b] || (totals[a] == totals[b] && orders[a] > orders[b]);
+    }
+
+    private void siftUp(int pos) {
+        int slot = heap[pos];
+        while (pos > 0) {
+            int parentPos = (pos - 1) >>> 1;
+            int parentSlot = heap[parentPos];
+            if (!worse(slot, parentSlot)) {
+                break;
+            }
+            heap[pos] = parentSlot;
+            heapPos[parentSlot] = pos;
+            pos = parentPos;
+        }
+        heap[pos] = slot;
+        heapPos[slot] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int slot = heap[pos];
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && worse(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!worse(heap[child], slot)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            heapPos[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = slot;
+        heapPos[slot] = pos;
+    }
+
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & tableMask;
+    }
+
+    private int findKey(long key) {
+        int i = home(key);
+        while (tableSlots[i] >= 0) {
+            if (tableKeys[i] == key) {
+                return tableSlots[i];
+            }
+            i = (i + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    private void putKey(long key, int slot) {
+        int i = home(key);
+        while (tableSlots[i] >= 0) {
+            i = (i + 1) & tableMask;
+        }
+        tableKeys[i] = key;
+        tableSlots[i] = slot;
+    }
+
+    /**
+     * A method that removes a key from the hash table, shifting back the keys probed after it so that
+     * no tombstones are needed.
+     */
+    private void removeKey(long key) {
+        int i = home(key);
+        while (tableSlots[i] >= 0 && tableKeys[i] != key) {
+            i = (i + 1) & tableMask;
+        }
+        if (tableSlots[i] < 0) {
+            return;
+        }
+        int j = i;
+        while (true) {
+            tableSlots[i] = -1;
+            while (true) {
+                j = (j + 1) & tableMask;
+                if (tableSlots[j] < 0) {
+                    return;
+                }
+                int h = home(tableKeys[j]);
+                // Move the key at j back to i unless its home lies cyclically in (i, j].
+                if (i <= j ? (i < h && h <= j) : (i < h || h <= j)) {
+                    continue;
+                }
+                break;
+            }
+            tableKeys[i] = tableKeys[j];
+            tableSlots[i] = tableSlots[j];
+            i = j;
+        }
+    }
+
+}
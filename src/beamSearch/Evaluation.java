@@ -0,0 +1,433 @@
+package beamSearch;
+
+import languageModel.Corpus;
+import languageModel.Metrics;
+import languageModel.Scorer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A class that measures how well Beam Search recovers plaintexts, by running many trials over a grid of settings
+ * (n, P, the length of the plaintexts and k) with one loaded language model. Each trial copies k plaintexts from
+ * random positions in a corpus, searches their XOR and records whether and where the plaintexts were found, how
+ * many of their bytes the most probable candidate got right, and the time and memory the search took.
+ *
+ * The plaintexts of a trial only depend on the seed, the length, k and the number of the trial, so every n and P
+ * is measured on the same plaintexts, and a run with the same seed repeats the same trials. Trials run in
+ * parallel, each searching on one thread, and the results are returned in the order of the grid.
+ *
+ * @author Shaquille Momoh
+ */
+public class Evaluation {
+
+    /**
+     * The columns of the CSV written by 'writeCsv'.
+     */
+    public static final String HEADER = "n,P,length,k,trial,seed,recovered,rank,byte_accuracy,millis," +
+            "allocated_bytes,mean_width,extensions";
+
+    private static final Metrics.Counter TRIALS = Metrics.DEFAULT.counter("evaluation_trials_total",
+            "Trials run by the evaluation.");
+    private static final Metrics.Counter RECOVERED = Metrics.DEFAULT.counter("evaluation_recovered_total",
+            "Trials whose most probable candidate held every plaintext.");
+    private static final Metrics.Timer TRIAL_TIME = Metrics.DEFAULT.timer("evaluation_trial_seconds",
+            "Time taken to search the XOR of one trial.");
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final BeamSearch beam = new BeamSearch();
+    private final Scorer scorer;
+    private final Corpus corpus;
+    private final long seed;
+    private int threads = 1;
+    private double margin = Double.POSITIVE_INFINITY;
+    private int minWidth = Integer.MAX_VALUE;
+    private long budget;
+
+    /**
+     * A constructor that creates an evaluation of the given language model.
+     *
+     * @param scorer : The language model, used for every n up to its own.
+     * @param corpus : The corpus the plaintexts are copied from.
+     * @param seed   : The seed the plaintexts of every trial are drawn from.
+     */
+    public Evaluation(Scorer scorer, Corpus corpus, long seed) {
+        this.scorer = scorer;
+        this.corpus = corpus;
+        this.seed = seed;
+    }
+
+    /**
+     * A method that sets the number of trials run at the same time.
+     *
+     * @param threads : The number of threads, for example from 'Split.getThreadNumber'.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1 but was " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * A method that makes every trial choose its beam width with 'BeamWidth', using P as the most candidates kept.
+     *
+     * @param margin   : The most a kept candidate's log probability may be below the most probable one's.
+     * @param minWidth : The fewest candidates kept, or P if it is less.
+     * @param budget   : The most extensions scored in one trial, or 0 for no limit.
+     */
+    public void setWidths(double margin, int minWidth, long budget) {
+        this.margin = margin;
+        this.minWidth = minWidth;
+        this.budget = budget;
+    }
+
+    /**
+     * A method that runs the given number of trials for every combination of the given settings.
+     *
+     * @param ns           : The sizes of n-grams to search with, none above the n of the language model.
+     * @param pruneNumbers : The prune numbers to search with.
+     * @param lengths      : The lengths of the plaintexts.
+     * @param ks           : The numbers of plaintexts sharing a keystream, each at least 2.
+     * @param trials       : The number of trials for each combination.
+     * @return : The trials, by length, k, n, P and then the number of the trial.
+     * @throws InterruptedException : If the thread is interrupted while waiting for the trials.
+     * @throws ExecutionException   : If a trial failed.
+     */
+    public List<Trial> run(int[] ns, int[] pruneNumbers, int[] lengths, int[] ks, int trials)
+            throws InterruptedException, ExecutionException {
+        for (int n : ns) {
+            if (n < 1 || n > scorer.getN()) {
+                throw new IllegalArgumentException("n must be between 1 and " + scorer.getN() + " but was " + n);
+            }
+        }
+        for (int k : ks) {
+            if (k < 2 || k > BeamSearch.MAX_K) {
+                throw new IllegalArgumentException("k must be between 2 and " + BeamSearch.MAX_K + " but was " + k);
+            }
+        }
+        for (int length : lengths) {
+            if (length < 1 || length >= corpus.length()) {
+                throw new IllegalArgumentException("The length must be between 1 and the length of the corpus (" +
+                        corpus.length() + ") but was " + length);
+            }
+        }
+
+        List<Callable<Trial>> tasks = new ArrayList<>();
+        for (int length : lengths) {
+            for (int k : ks) {
+                for (int n : ns) {
+                    for (int pruneNumber : pruneNumbers) {
+                        for (int trial = 0; trial < trials; trial++) {
+                            tasks.add(trialTask(n, pruneNumber, length, k, trial));
+                        }
+                    }
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Trial> results = new ArrayList<>(tasks.size());
+            for (Future<Trial> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Callable<Trial> trialTask(final int n, final int pruneNumber, final int length, final int k,
+                                      final int trial) {
+        return new Callable<Trial>() {
+            @Override
+            public Trial call() {
+                return runTrial(n, pruneNumber, length, k, trial);
+            }
+        };
+    }
+
+    /**
+     * A method that searches the XOR of the plaintexts of one trial and measures the result.
+     */
+    Trial runTrial(int n, int pruneNumber, int length, int k, int trial) {
+        long trialSeed = trialSeed(length, k, trial);
+        byte[][] plaintexts = BeamSearch.getPlaintextBytes(length, k, corpus, new Random(trialSeed));
+        byte[] xor = BeamSearch.getXOROfPlaintext(plaintexts);
+
+        // Without 'setWidths' the margin is infinite and the width is P, which is the search with a fixed P.
+        BeamWidth width = new BeamWidth(margin, Math.min(minWidth, pruneNumber), pruneNumber);
+        width.setBudget(budget);
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        ArrayList<PlaintextCandidate> candidates = beam.beamSearch(scorer, n, width, xor, k);
+        long nanos = System.nanoTime() - start;
+        allocated = allocated < 0 ? -1 : allocatedBytes() - allocated;
+        TRIAL_TIME.since(start);
+
+        int rank = rank(plaintexts, candidates);
+        TRIALS.increment();
+        if (rank == 1) {
+            RECOVERED.increment();
+        }
+        double accuracy = candidates.isEmpty() ? 0 : byteAccuracy(plaintexts, candidates.get(0));
+        return new Trial(n, pruneNumber, length, k, trial, trialSeed, rank, accuracy, nanos / 1e6, allocated,
+                width.getMeanWidth(), width.getScored());
+    }
+
+    /**
+     * @return : The seed of the plaintexts of a trial, which does not depend on n or P.
+     */
+    private long trialSeed(int length, int k, int trial) {
+        long mixed = seed;
+        mixed = mixed * 1000003 + length;
+        mixed = mixed * 1000003 + k;
+        mixed = mixed * 1000003 + trial;
+        return mixed;
+    }
+
+    /**
+     * A method that finds the first candidate holding every plaintext.
+     *
+     * @param plaintexts : The plaintexts of the trial.
+     * @param candidates : The candidates, from most probable to least.
+     * @return : The position of the candidate counting from 1, or 0 if no candidate holds every plaintext.
+     */
+    public static int rank(byte[][] plaintexts, List<PlaintextCandidate> candidates) {
+        for (int i = 0; i < candidates.size(); i++) {
+            boolean recovered = true;
+            for (byte[] plaintext : plaintexts) {
+                recovered &= candidates.get(i).contains(plaintext);
+            }
+            if (recovered) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A method that measures how many positions of the plaintexts a candidate got right. A position is right if
+     * the candidate holds the same bytes there, in any order, so plaintexts swapped part of the way through are
+     * only wrong where they are swapped.
+     *
+     * @param plaintexts : The plaintexts of the trial.
+     * @param candidate  : A candidate for them.
+     * @return : The fraction of positions the candidate got right.
+     */
+    public static double byteAccuracy(byte[][] plaintexts, PlaintextCandidate candidate) {
+        byte[][] recovered = candidate.getPlaintextBytes();
+        int length = plaintexts[0].length;
+        byte[] expected = new byte[plaintexts.length];
+        byte[] actual = new byte[plaintexts.length];
+        int right = 0;
+        for (int i = 0; i < length; i++) {
+            for (int s = 0; s < plaintexts.length; s++) {
+                expected[s] = plaintexts[s][i];
+                actual[s] = recovered[s][i];
+            }
+            Arrays.sort(expected);
+            Arrays.sort(actual);
+            if (Arrays.equals(expected, actual)) {
+                right++;
+            }
+        }
+        return length == 0 ? 1 : right / (double) length;
+    }
+
+    /**
+     * @return : The bytes allocated by the current thread so far, or -1 if the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * A method that writes the trials to a CSV file, one line per trial after the 'HEADER' line.
+     *
+     * @param trials : The trials.
+     * @param f      : The file to write.
+     * @throws IOException : If the file could not be written.
+     */
+    public static void writeCsv(List<Trial> trials, File f) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(f),
+                StandardCharsets.UTF_8))) {
+            out.println(HEADER);
+            for (Trial trial : trials) {
+                out.println(trial.toCsv());
+            }
+            if (out.checkError()) {
+                throw new IOException("Could not write the trials to " + f);
+            }
+        }
+    }
+
+    /**
+     * A method that summarises the trials of each combination of settings: the fraction recovered by the most
+     * probable candidate, the fraction recovered by any candidate, the mean byte accuracy, time, width and number of
+     * extensions scored.
+     *
+     * @param trials : The trials, as returned by 'run'.
+     * @return : One line per combination.
+     */
+    public static String summary(List<Trial> trials) {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "%4s %7s %7s %3s %7s %8s %8s %9s %10s %8s %12s%n", "n", "P", "length", "k", "trials", "top", "any",
+                "bytes", "ms", "width", "extensions"));
+        int from = 0;
+        while (from < trials.size()) {
+            Trial first = trials.get(from);
+            int to = from;
+            int top = 0;
+            int any = 0;
+            double bytes = 0;
+            double millis = 0;
+            double width = 0;
+            double extensions = 0;
+            while (to < trials.size() && trials.get(to).sameSettings(first)) {
+                Trial trial = trials.get(to++);
+                top += trial.getRank() == 1 ? 1 : 0;
+                any += trial.getRank() > 0 ? 1 : 0;
+                bytes += trial.getByteAccuracy();
+                millis += trial.getMillis();
+                width += trial.getMeanWidth();
+                extensions += trial.getExtensions();
+            }
+            int count = to - from;
+            sb.append(String.format(Locale.ROOT, "%4d %7d %7d %3d %7d %8.3f %8.3f %9.3f %10.1f %8.1f %12.0f%n",
+                    first.n, first.pruneNumber, first.length, first.k, count, top / (double) count,
+                    any / (double) count, bytes / count, millis / count, width / count, extensions / count));
+            from = to;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A class that holds the settings and the results of one trial.
+     */
+    public static class Trial {
+
+        private final int n;
+        private final int pruneNumber;
+        private final int length;
+        private final int k;
+        private final int trial;
+        private final long seed;
+        private final int rank;
+        private final double byteAccuracy;
+        private final double millis;
+        private final long allocatedBytes;
+        private final double meanWidth;
+        private final long extensions;
+
+        Trial(int n, int pruneNumber, int length, int k, int trial, long seed, int rank, double byteAccuracy,
+              double millis, long allocatedBytes, double meanWidth, long extensions) {
+            this.n = n;
+            this.pruneNumber = pruneNumber;
+            this.length = length;
+            this.k = k;
+            this.trial = trial;
+            this.seed = seed;
+            this.rank = rank;
+            this.byteAccuracy = byteAccuracy;
+            this.millis = millis;
+            this.allocatedBytes = allocatedBytes;
+            this.meanWidth = meanWidth;
+            this.extensions = extensions;
+        }
+
+        private boolean sameSettings(Trial other) {
+            return n == other.n && pruneNumber == other.pruneNumber && length == other.length && k == other.k;
+        }
+
+        /**
+         * @return : True if the most probable candidate held every plaintext.
+         */
+        public boolean isRecovered() {
+            return rank == 1;
+        }
+
+        /**
+         * @return : The position of the first candidate holding every plaintext counting from 1, or 0 if none did.
+         */
+        public int getRank() {
+            return rank;
+        }
+
+        /**
+         * @return : The fraction of positions the most probable candidate got right.
+         */
+        public double getByteAccuracy() {
+            return byteAccuracy;
+        }
+
+        /**
+         * @return : The time taken by the search, in milliseconds.
+         */
+        public double getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return : The bytes allocated by the search, or -1 if the JVM does not count them.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return : The mean number of candidates kept per position.
+         */
+        public double getMeanWidth() {
+            return meanWidth;
+        }
+
+        /**
+         * @return : The number of extensions scored by the search.
+         */
+        public long getExtensions() {
+            return extensions;
+        }
+
+        /**
+         * @return : The seed the plaintexts of the trial were drawn from.
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @return : The trial as a line of the CSV, in the columns of 'HEADER'.
+         */
+        public String toCsv() {
+            return String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%b,%d,%.4f,%.3f,%d,%.2f,%d", n, pruneNumber,
+                    length, k, trial, seed, isRecovered(), rank, byteAccuracy, millis, allocatedBytes, meanWidth,
+                    extensions);
+        }
+
+    }
+
+}
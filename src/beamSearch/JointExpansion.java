@@ -0,0 +1,133 @@
+package beamSearch;
+
+import languageModel.Scorer;
+
+/**
+ * A class that extends a range of the current candidates of Beam Search when several ciphertexts were encrypted
+ * with the same keystream and are recovered together. The byte of the first (reference) plaintext is the only
+ * choice: the byte of every other plaintext is the reference byte XOR the two ciphertext bytes, since the keystream
+ * byte they share cancels out. A reference byte is therefore only tried if it makes every other plaintext printable
+ * too, and the set of such bytes only depends on the position, so it is worked out once per position rather than
+ * once per candidate. The more ciphertexts there are, the fewer bytes survive.
+ * A ciphertext shorter than the position takes no part in it.
+ *
+ * @author Shaquille Momoh
+ */
+public class JointExpansion implements CandidateExpander {
+
+    private final int streams;
+    private final int[] printableAscii;
+    private final boolean[] printable = new boolean[256];
+    private final byte[][] ciphertexts;
+    private final CandidateSelector selector;
+
+    // The log probability of every 7-bit Ascii character following the context of each plaintext of a candidate.
+    private final double[][] rows;
+
+    // The plaintexts taking part in the current position, with the XOR of their ciphertext byte and the reference.
+    private final int[] active;
+    private final int[] xors;
+
+    // The indices into 'printableAscii' of the reference bytes making every plaintext printable at this position.
+    private final int[] valid;
+
+    // The next byte and log probability of each plaintext of the extension being offered.
+    private final byte[] extBytes;
+    private final double[] extScores;
+
+    /**
+     * A constructor that creates a worker keeping the top 'pruneNumber' extensions it scores.
+     *
+     * @param printableAscii : The characters each plaintext is extended by.
+     * @param ciphertexts    : The ciphertexts, the first of which is the reference and must be the longest.
+     * @param pruneNumber    : The number of extensions to keep.
+     */
+    public JointExpansion(int[] printableAscii, byte[][] ciphertexts, int pruneNumber) {
+        this.streams = ciphertexts.length;
+        this.printableAscii = printableAscii;
+        for (int c : printableAscii) {
+            printable[c] = true;
+        }
+        this.ciphertexts = ciphertexts;
+        this.selector = new CandidateSelector(streams, pruneNumber);
+        this.rows = new double[streams][Scorer.ROW_WIDTH];
+        this.active = new int[streams];
+        this.xors = new int[streams];
+        this.valid = new int[printableAscii.length];
+        this.extBytes = new byte[streams];
+        this.extScores = new double[streams];
+    }
+
+    @Override
+    public void expand(Scorer scorer, Beam candidates, int from, int to, int position, int contextLength,
+                       int pruneNumber) {
+
+        selector.reset(pruneNumber);
+
+        int activeCount = 0;
+        for (int s = 0; s < streams; s++) {
+            if (position < ciphertexts[s].length) {
+                active[activeCount] = s;
+                xors[activeCount] = (ciphertexts[0][position] ^ ciphertexts[s][position]) & 0xFF;
+                activeCount++;
+            }
+        }
+
+        int validCount = 0;
+        for (int index = 0; index < printableAscii.length; index++) {
+            int reference = printableAscii[index];
+            boolean allPrintable = true;
+            for (int a = 1; a < activeCount && allPrintable; a++) {
+                allPrintable = printable[reference ^ xors[a]];
+            }
+            if (allPrintable) {
+                valid[validCount++] = index;
+            }
+        }
+
+        for (int candNum = from; candNum < to; candNum++) {
+
+            double parentTotal = 0;
+            for (int a = 0; a < activeCount; a++) {
+                int s = active[a];
+                parentTotal += candidates.getScore(candNum, s);
+                scorer.scoreRow(candidates.getContext(candNum, s), contextLength, rows[s]);
+            }
+
+            for (int v = 0; v < validCount; v++) {
+                int index = valid[v];
+                int reference = printableAscii[index];
+
+                double total = parentTotal;
+                for (int a = 0; a < activeCount; a++) {
+                    total += rows[active[a]][reference ^ xors[a]];
+                }
+                long order = (long) candNum * printableAscii.length + index;
+
+                // Extensions that cannot make the top 'pruneNumber' are dropped without being stored.
+                if (!selector.accepts(total, order)) {
+                    continue;
+                }
+
+                for (int s = 0; s < streams; s++) {
+                    extBytes[s] = 0;
+                    extScores[s] = candidates.getScore(candNum, s);
+                }
+                for (int a = 0; a < activeCount; a++) {
+                    int s = active[a];
+                    int next = reference ^ xors[a];
+                    extBytes[s] = (byte) next;
+                    extScores[s] += rows[s][next];
+                }
+                selector.offer(total, order, Beam.streamKey(candidates, candNum, 0, reference), candNum, extBytes,
+                        extScores, 0);
+            }
+        }
+    }
+
+    @Override
+    public CandidateSelector getSelector() {
+        return selector;
+    }
+
+}
@@ -0,0 +1,217 @@
+package beamSearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A class that records the candidates kept at every position of Beam Search as a back-pointer lattice.
+ * Each entry stores only the index of its parent in the previous layer and the byte it chose for each
+ * plaintext, so extending a candidate never copies its prefix. Full plaintexts are only rebuilt by
+ * walking the parents back from the final layer.
+ *
+ * When every entry of the last layer descends from the same entry of an earlier layer, the layers up to it
+ * hold one path that no later layer can change. 'release' hands that path back and drops its layers, so a
+ * search that is fed its ciphertext a chunk at a time only keeps the layers it has not agreed on yet.
+ *
+ * @author Shaquille Momoh
+ */
+public class Lattice {
+
+    private final int streams;
+    private final ArrayList<int[]> parents = new ArrayList<>();
+    private final ArrayList<byte[]> bytes = new ArrayList<>();
+    private int[] sizes = new int[16];
+
+    // Scratch for walking the entries of the last layer back through their parents.
+    private int[] live = new int[16];
+    private int[] marks = new int[16];
+    private int stamp;
+
+    /**
+     * A constructor that creates an empty lattice.
+     *
+     * @param streams : The number of plaintexts each entry holds a byte for.
+     */
+    public Lattice(int streams) {
+        this.streams = streams;
+    }
+
+    /**
+     * A method that adds a new layer to the lattice. The arrays passed in are owned by the lattice afterwards.
+     *
+     * @param layerParents : The index in the previous layer of the parent of each entry.
+     * @param layerBytes   : The bytes chosen by each entry, 'streams' bytes per entry.
+     * @param size         : The number of entries in the layer.
+     */
+    public void addLayer(int[] layerParents, byte[] layerBytes, int size) {
+        if (parents.size() == sizes.length) {
+            sizes = Arrays.copyOf(sizes, sizes.length * 2);
+        }
+        sizes[parents.size()] = size;
+        parents.add(layerParents);
+        bytes.add(layerBytes);
+    }
+
+    /**
+     * @return : The number of layers (positions) in the lattice.
+     */
+    public int length() {
+        return parents.size();
+    }
+
+    public int size(int layer) {
+        return sizes[layer];
+    }
+
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * A method that rebuilds the plaintexts of an entry in the last layer by walking back through its parents.
+     *
+     * @param entry : The index of the entry in the last layer.
+     * @return : The plaintexts of the entry, one byte array per stream.
+     */
+    public byte[][] reconstruct(int entry) {
+        int length = length();
+        byte[][] plaintexts = new byte[streams][length];
+        for (int layer = length - 1; layer >= 0; layer--) {
+            byte[] layerBytes = bytes.get(layer);
+            for (int s = 0; s < streams; s++) {
+                plaintexts[s][layer] = layerBytes[entry * streams + s];
+            }
+            entry = parents.get(layer)[entry];
+        }
+        return plaintexts;
+    }
+
+    /**
+     * A method that finds how many of the first layers every entry of the last layer agrees on, which are the
+     * layers up to the last one where all of them descend from the same entry.
+     *
+     * @return : The number of layers, from the first, that hold a single path.
+     */
+    public int convergedLayers() {
+        int layer = length() - 1;
+        if (layer < 0) {
+            return 0;
+        }
+        int count = sizes[layer];
+        if (live.length < count) {
+            live = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            live[i] = i;
+        }
+
+        // Each pass maps the distinct ancestors at one layer to their distinct parents in the layer before it.
+        while (count > 1) {
+            if (layer == 0) {
+                return 0;
+            }
+            int[] layerParents = parents.get(layer);
+            layer--;
+            if (marks.length < sizes[layer]) {
+                marks = new int[Math.max(sizes[layer], marks.length * 2)];
+                stamp = 0;
+            }
+            if (++stamp == 0) {
+                // The stamps wrapped around, so a mark left long ago could match again.
+                Arrays.fill(marks, 0);
+                stamp = 1;
+            }
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                int parent = layerParents[live[i]];
+                if (marks[parent] != stamp) {
+                    marks[parent] = stamp;
+                    live[distinct++] = parent;
+                }
+            }
+            count = distinct;
+        }
+        return layer + 1;
+    }
+
+    /**
+     * A method that finds the ancestor in the given layer of every entry of the last layer.
+     *
+     * @param layer : The layer of the ancestors.
+     * @return : The index in 'layer' of the ancestor of each entry of the last layer.
+     */
+    public int[] ancestors(int layer) {
+        int last = length() - 1;
+        int[] ancestors = new int[sizes[last]];
+        for (int i = 0; i < ancestors.length; i++) {
+            ancestors[i] = i;
+        }
+        for (int l = last; l > layer; l--) {
+            int[] layerParents = parents.get(l);
+            for (int i = 0; i < ancestors.length; i++) {
+                ancestors[i] = layerParents[ancestors[i]];
+            }
+        }
+        return ancestors;
+    }
+
+    /**
+     * A method that keeps only the given entries of the last layer, in the same order.
+     *
+     * @param entries : The indices of the entries to keep, in increasing order.
+     * @param count   : The number of entries to keep.
+     */
+    public void retainLast(int[] entries, int count) {
+        int last = length() - 1;
+        int[] layerParents = parents.get(last);
+        byte[] layerBytes = bytes.get(last);
+        for (int i = 0; i < count; i++) {
+            layerParents[i] = layerParents[entries[i]];
+            System.arraycopy(layerBytes, entries[i] * streams, layerBytes, i * streams, streams);
+        }
+        sizes[last] = count;
+    }
+
+    /**
+     * A method that removes the first layers, which every entry of the last layer must agree on (see
+     * 'convergedLayers'), returning the bytes they hold. The parents of the new first layer are no longer used.
+     *
+     * @param layers : The number of layers to remove.
+     * @return : The bytes of the removed layers, one byte array per stream.
+     */
+    public byte[][] release(int layers) {
+        int length = length();
+        if (layers > length) {
+            throw new IllegalArgumentException("Cannot release " + layers + " of " + length + " layers");
+        }
+        int entry = 0;
+        for (int layer = length - 1; layer >= layers; layer--) {
+            entry = parents.get(layer)[entry];
+        }
+        byte[][] released = new byte[streams][layers];
+        for (int layer = layers - 1; layer >= 0; layer--) {
+            byte[] layerBytes = bytes.get(layer);
+            for (int s = 0; s < streams; s++) {
+                released[s][layer] = layerBytes[entry * streams + s];
+            }
+            entry = parents.get(layer)[entry];
+        }
+
+        parents.subList(0, layers).clear();
+        bytes.subList(0, layers).clear();
+        System.arraycopy(sizes, layers, sizes, 0, length - layers);
+        return released;
+    }
+
+    /**
+     * A method that decodes a reconstructed plaintext, keeping one character per byte.
+     *
+     * @param plaintext : The plaintext bytes.
+     * @return : The plaintext as a String.
+     */
+    public static String decode(byte[] plaintext) {
+        return new String(plaintext, StandardCharsets.ISO_8859_1);
+    }
+
+}
@@ -0,0 +1,193 @@
+package beamSearch;
+
+import languageModel.Scorer;
+
+/**
+ * A class that extends a range of the current candidates of Beam Search when the keystream was reused k times,
+ * so each candidate holds k plaintexts. The bytes of the first k-1 plaintexts are chosen freely from the printable
+ * characters and the byte of the last plaintext is derived from the XOR of the ciphertexts, so an extension is
+ * skipped when the derived byte is not printable.
+ *
+ * Rather than scoring all 96^(k-1) combinations, the characters of each free plaintext are tried from most to
+ * least probable, and a branch is cut as soon as its log probability so far plus the best log probability each
+ * remaining plaintext could still add cannot beat the least probable extension kept. Since the characters are
+ * tried in order, a cut also skips every less probable character of the same plaintext.
+ *
+ * @author Shaquille Momoh
+ */
+public class MultiStreamExpansion implements CandidateExpander {
+
+    // Extensions are only cut when their bound is below the threshold by more than rounding could explain.
+    private static final double PRUNE_SLACK = 1e-9;
+
+    private final int streams;
+    private final int free;
+    private final int[] printableAscii;
+    private final byte[] ciphertext;
+    private final boolean[] printable = new boolean[256];
+    private final CandidateSelector selector;
+
+    // The log probability of every 7-bit Ascii character following the context of each plaintext of a candidate.
+    private final double[][] rows;
+
+    // For each free plaintext, the indices into 'printableAscii' from the most probable character to the least.
+    private final int[][] byScore;
+
+    // bestRemaining[s]: the most log probability plaintexts s to k-1 could add to the extension.
+    private final double[] bestRemaining;
+
+    // The next byte and log probability of each plaintext of the extension being built, and the hash scratch.
+    private final byte[] extBytes;
+    private final double[] extScores;
+    private final long[] keyScratch;
+
+    // The candidate being extended.
+    private Beam candidates;
+    private int candNum;
+    private int cipherByte;
+    private long orderBase;
+
+    /**
+     * A constructor that creates a worker keeping the top 'pruneNumber' extensions it scores.
+     *
+     * @param printableAscii : The characters each plaintext is extended by.
+     * @param ciphertext     : The XOR of the k ciphertexts.
+     * @param streams        : The number of plaintexts (k), at least 2.
+     * @param pruneNumber    : The number of extensions to keep.
+     */
+    public MultiStreamExpansion(int[] printableAscii, byte[] ciphertext, int streams, int pruneNumber) {
+        if (streams < 2 || streams > BeamSearch.MAX_K) {
+            throw new IllegalArgumentException("There must be between 2 and " + BeamSearch.MAX_K +
+                    " plaintexts but there were " + streams);
+        }
+        this.streams = streams;
+        this.free = streams - 1;
+        this.printableAscii = printableAscii;
+        this.ciphertext = ciphertext;
+        for (int c : printableAscii) {
+            printable[c] = true;
+        }
+        this.selector = new CandidateSelector(streams, pruneNumber);
+        this.rows = new double[streams][Scorer.ROW_WIDTH];
+        this.byScore = new int[free][printableAscii.length];
+        this.bestRemaining = new double[streams];
+        this.extBytes = new byte[streams];
+        this.extScores = new double[streams];
+        this.keyScratch = new long[streams];
+    }
+
+    @Override
+    public void expand(Scorer scorer, Beam candidates, int from, int to, int position, int contextLength,
+                       int pruneNumber) {
+
+        selector.reset(pruneNumber);
+        this.candidates = candidates;
+        this.cipherByte = ciphertext[position] & 0xFF;
+
+        long combinations = 1;
+        for (int s = 0; s < free; s++) {
+            combinations *= printableAscii.length;
+        }
+
+        for (candNum = from; candNum < to; candNum++) {
+
+            double parentTotal = 0;
+            for (int s = 0; s < streams; s++) {
+                parentTotal += candidates.getScore(candNum, s);
+                long context = candidates.getContext(candNum, s);
+                int same = 0;
+                while (same < s && candidates.getContext(candNum, same) != context) {
+                    same++;
+                }
+                if (same < s) {
+                    System.arraycopy(rows[same], 0, rows[s], 0, Scorer.ROW_WIDTH);
+                } else {
+                    scorer.scoreRow(context, contextLength, rows[s]);
+                }
+            }
+
+            bestRemaining[free] = best(rows[free]);
+            for (int s = free - 1; s >= 0; s--) {
+                sortByScore(rows[s], byScore[s]);
+                bestRemaining[s] = bestRemaining[s + 1] + rows[s][printableAscii[byScore[s][0]]];
+            }
+
+            orderBase = candNum * combinations;
+            choose(0, parentTotal, 0, 0);
+        }
+    }
+
+    /**
+     * A method that chooses the byte of the free plaintext 'stream' and every plaintext after it, offering each
+     * complete extension to the selector.
+     *
+     * @param stream  : The plaintext to choose the byte of.
+     * @param total   : The log probability of the candidate with the bytes chosen so far.
+     * @param xor     : The XOR of the bytes chosen so far.
+     * @param order   : The generation order of the bytes chosen so far, in base 96.
+     */
+    private void choose(int stream, double total, int xor, long order) {
+        if (stream == free) {
+            int derived = cipherByte ^ xor;
+            if (!printable[derived]) {
+                return;
+            }
+            double score = rows[free][derived];
+            long generation = orderBase + order;
+            if (!selector.accepts(total + score, generation)) {
+                return;
+            }
+            extBytes[free] = (byte) derived;
+            extScores[free] = candidates.getScore(candNum, free) + score;
+            selector.offer(total + score, generation, Beam.unorderedKey(candidates, candNum, extBytes, 0, keyScratch),
+                    candNum, extBytes, extScores, 0);
+            return;
+        }
+
+        int[] indices = byScore[stream];
+        double[] row = rows[stream];
+        double parentScore = candidates.getScore(candNum, stream);
+        for (int i = 0; i < indices.length; i++) {
+            int index = indices[i];
+            int c = printableAscii[index];
+            double score = row[c];
+            if (total + score + bestRemaining[stream + 1] < selector.threshold() - PRUNE_SLACK) {
+                // Every character after this one is less probable, so none of them can be kept either.
+                break;
+            }
+            extBytes[stream] = (byte) c;
+            extScores[stream] = parentScore + score;
+            choose(stream + 1, total + score, xor ^ c, order * printableAscii.length + index);
+        }
+    }
+
+    private double best(double[] row) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (int c : printableAscii) {
+            best = Math.max(best, row[c]);
+        }
+        return best;
+    }
+
+    /**
+     * A method that fills 'indices' with the indices into 'printableAscii' sorted from the most probable
+     * character to the least, breaking ties by index.
+     */
+    private void sortByScore(double[] row, int[] indices) {
+        for (int i = 0; i < indices.length; i++) {
+            double score = row[printableAscii[i]];
+            int j = i;
+            while (j > 0 && row[printableAscii[indices[j - 1]]] < score) {
+                indices[j] = indices[j - 1];
+                j--;
+            }
+            indices[j] = i;
+        }
+    }
+
+    @Override
+    public CandidateSelector getSelector() {
+        return selector;
+    }
+
+}
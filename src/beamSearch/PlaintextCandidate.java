@@ -0,0 +1,98 @@
+package beamSearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A class that holds a plaintext candidate recovered when the keystream was reused any number of times, with the
+ * log probability of each of its plaintexts. 'Tuple' is used when the keystream was reused twice.
+ * The plaintexts are held as bytes, one byte per character, and are only decoded into Strings to be printed.
+ *
+ * @author Shaquille Momoh
+ */
+public class PlaintextCandidate {
+
+    private final byte[][] plaintexts;
+    private final double[] probabilities;
+
+    public PlaintextCandidate(byte[][] plaintexts, double[] probabilities) {
+        this.plaintexts = plaintexts;
+        this.probabilities = probabilities;
+    }
+
+    public PlaintextCandidate(String[] plaintexts, double[] probabilities) {
+        this.plaintexts = new byte[plaintexts.length][];
+        for (int i = 0; i < plaintexts.length; i++) {
+            this.plaintexts[i] = plaintexts[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * @return : The plaintexts decoded into Strings.
+     */
+    public String[] getPlaintexts() {
+        String[] decoded = new String[plaintexts.length];
+        for (int i = 0; i < plaintexts.length; i++) {
+            decoded[i] = Lattice.decode(plaintexts[i]);
+        }
+        return decoded;
+    }
+
+    /**
+     * @return : The bytes of the plaintexts. The arrays are not copied.
+     */
+    public byte[][] getPlaintextBytes() {
+        return plaintexts;
+    }
+
+    public double[] getProbabilities() {
+        return probabilities;
+    }
+
+    /**
+     * @return : The log probability of the candidate, the sum of the log probabilities of its plaintexts.
+     */
+    public double getLogProbability() {
+        double total = 0;
+        for (double probability : probabilities) {
+            total += probability;
+        }
+        return total;
+    }
+
+    /**
+     * A method that checks whether the candidate holds the given plaintext.
+     *
+     * @param plaintext : The plaintext to look for.
+     * @return : True if one of the plaintexts of the candidate is equal to it.
+     */
+    public boolean contains(String plaintext) {
+        return contains(plaintext.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * A method that checks whether the candidate holds the given plaintext.
+     *
+     * @param plaintext : The bytes of the plaintext to look for.
+     * @return : True if one of the plaintexts of the candidate has the same bytes.
+     */
+    public boolean contains(byte[] plaintext) {
+        for (byte[] candidate : plaintexts) {
+            if (Arrays.equals(candidate, plaintext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        for (int i = 0; i < plaintexts.length; i++) {
+            sb.append("Plaintext ").append(i + 1).append(": ").append(Lattice.decode(plaintexts[i])).append(", ");
+        }
+        return sb.append("Log probability: ").append(getLogProbability()).append(" ]").toString();
+    }
+
+}
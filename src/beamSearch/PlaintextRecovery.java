@@ -1,17 +1,29 @@
 package beamSearch;
 
+import languageModel.Corpus;
 import languageModel.LanguageModel;
+import languageModel.MappedModel;
+import languageModel.Metrics;
+import languageModel.ModelFile;
+import languageModel.NGramStore;
 import languageModel.ParseCorpus;
+import languageModel.ScoreCache;
+import languageModel.Scorer;
 import languageModel.Split;
 import org.apache.commons.cli.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class that recovers the plaintexts using methods from 'BeamSearch' and 'LanguageModel'.
@@ -25,13 +37,19 @@ public class PlaintextRecovery {
     private static LanguageModel lm = new LanguageModel();
     private static Split split = new Split();
 
+    // The most rows of log probabilities cached when recovering ciphertexts jointly, unless -cache is given.
+    private static final int JOINT_CACHE_ROWS = 1 << 14;
+
+    // The searches run with each model before a server accepts jobs, so the first job is not run interpreted.
+    private static final int SERVER_WARM_UP_SEARCHES = 200;
+
     /**
      * A method that prints the given candidates in the desired format, along with their probabilities.
      *
      * @param candidates : The list of plaintext candidates to print.
      */
-    public static void getTopPlaintextCandidates(ArrayList<Tuple> candidates) {
-        for (Tuple candidate : candidates) {
+    public static void getTopPlaintextCandidates(List<?> candidates) {
+        for (Object candidate : candidates) {
             System.out.println(candidate.toString());
         }
     }
@@ -50,10 +68,10 @@ public class PlaintextRecovery {
 
         for (int i = 0; i < topCands; i++) {
             Tuple tuple = candidates.get(i);
+            // The candidate must hold every plaintext, not just the last one checked.
+            recovered = true;
             for (int j = 0; j < plaintexts.length; j++) {
-                if (tuple.getPlaintextOne().equals(plaintexts[j]) || tuple.getPlaintextTwo().equals(plaintexts[j])) {
-                    recovered = true;
-                } else {
+                if (!tuple.getPlaintextOne().equals(plaintexts[j]) && !tuple.getPlaintextTwo().equals(plaintexts[j])) {
                     recovered = false;
                 }
             }
@@ -66,6 +84,153 @@ public class PlaintextRecovery {
         return recovered;
     }
 
+    /**
+     * A method that checks if every plaintext was recovered by a single candidate in the top t per-cent of
+     * candidates, when the keystream was reused k times.
+     * @param plaintexts : The original plaintexts to recover.
+     * @param candidates : The list of plaintext candidates.
+     * @param t : The percentage of candidates to search to see if the plaintexts were recovered.
+     * @return : A boolean to indicate whether the plaintexts were recovered in the top t per-cent.
+     */
+    public static boolean recoveredAllPlaintexts(String[] plaintexts, ArrayList<PlaintextCandidate> candidates,
+                                                 int t) {
+        byte[][] bytes = new byte[plaintexts.length][];
+        for (int i = 0; i < plaintexts.length; i++) {
+            bytes[i] = plaintexts[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return recoveredAllPlaintexts(bytes, candidates, t);
+    }
+
+    /**
+     * A method that checks if every plaintext, given as bytes, was recovered by a single candidate in the top
+     * t per-cent of candidates.
+     * @param plaintexts : The bytes of the original plaintexts to recover.
+     * @param candidates : The list of plaintext candidates.
+     * @param t : The percentage of candidates to search to see if the plaintexts were recovered.
+     * @return : A boolean to indicate whether the plaintexts were recovered in the top t per-cent.
+     */
+    public static boolean recoveredAllPlaintexts(byte[][] plaintexts, ArrayList<PlaintextCandidate> candidates,
+                                                 int t) {
+        int topCands = (int) (candidates.size() * (t / 100.0f));
+
+        for (int i = 0; i < topCands; i++) {
+            PlaintextCandidate candidate = candidates.get(i);
+            boolean recovered = true;
+            for (byte[] plaintext : plaintexts) {
+                recovered &= candidate.contains(plaintext);
+            }
+            if (recovered) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A method that encrypts every plaintext with the same random keystream.
+     *
+     * @param plaintexts : The plaintexts to encrypt.
+     * @return : The ciphertexts.
+     */
+    public static byte[][] encryptWithOneKeystream(String[] plaintexts) {
+        byte[][] bytes = new byte[plaintexts.length][];
+        for (int i = 0; i < plaintexts.length; i++) {
+            bytes[i] = plaintexts[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return encryptWithOneKeystream(bytes);
+    }
+
+    /**
+     * A method that encrypts every plaintext, given as bytes, with the same random keystream.
+     *
+     * @param plaintexts : The plaintexts to encrypt, which are not modified.
+     * @return : The ciphertexts.
+     */
+    public static byte[][] encryptWithOneKeystream(byte[][] plaintexts) {
+        int length = 0;
+        for (byte[] plaintext : plaintexts) {
+            length = Math.max(length, plaintext.length);
+        }
+        byte[] keystream = new byte[length];
+        new SecureRandom().nextBytes(keystream);
+
+        byte[][] ciphertexts = new byte[plaintexts.length][];
+        for (int i = 0; i < plaintexts.length; i++) {
+            ciphertexts[i] = plaintexts[i].clone();
+            for (int j = 0; j < ciphertexts[i].length; j++) {
+                ciphertexts[i][j] ^= keystream[j];
+            }
+        }
+        return ciphertexts;
+    }
+
+    /**
+     * A method that counts the n-grams of the corpus, in one streaming pass if a memory budget was given.
+     */
+    private static NGramStore countNGrams(CommandLine cmd, File corpus, Corpus mappedCorpus, int n)
+            throws IOException, InterruptedException, ExecutionException {
+        if (cmd.hasOption("mem")) {
+            long memoryBudget = Long.parseLong(cmd.getOptionValue("mem")) << 20;
+            return parse.processFilesStreaming(corpus, n, memoryBudget);
+        }
+        return parse.processCorpus(mappedCorpus, n);
+    }
+
+    /**
+     * A method that builds the language model of the corpus chosen by -kn and -d. With -mem a laplace smoothed
+     * model is merged straight into a model file, so the counts never have to fit in memory at once; Kneser-Ney
+     * needs the counts themselves and still merges them into one store.
+     */
+    private static Scorer createLanguageModel(CommandLine cmd, File corpus, Corpus mappedCorpus, int n)
+            throws IOException, InterruptedException, ExecutionException {
+        if (cmd.hasOption("kn")) {
+            if (cmd.hasOption("d")) {
+                System.out.println("-d only applies to laplace smoothing and is ignored with -kn");
+            }
+            return lm.createKneserNeyModel(countNGrams(cmd, corpus, mappedCorpus, n));
+        }
+        if (cmd.hasOption("mem")) {
+            if (cmd.hasOption("d")) {
+                System.out.println("-d is ignored with -mem, which reads the model from a model file");
+            }
+            File modelFile = File.createTempFile("twotimepad-", ".ttpm");
+            modelFile.deleteOnExit();
+            return buildModelFile(cmd, corpus, mappedCorpus, n, modelFile);
+        }
+        return lm.createModel(countNGrams(cmd, corpus, mappedCorpus, n), cmd.hasOption("d"));
+    }
+
+    /**
+     * A method that tells the user -kn and -d have no effect, as a model file always holds a laplace smoothed model
+     * that is scored straight from the mapped file rather than from a dense table.
+     *
+     * @param cmd    : The parsed command line.
+     * @param option : The option reading or writing a model file.
+     */
+    private static void ignoredWithModelFile(CommandLine cmd, String option) {
+        if (cmd.hasOption("kn") || cmd.hasOption("d")) {
+            System.out.println("-kn and -d are ignored with " + option +
+                    ", as a model file holds a laplace smoothed model scored straight from the file");
+        }
+    }
+
+    /**
+     * A method that writes the laplace smoothed language model of the corpus to a model file and opens it.
+     */
+    private static MappedModel buildModelFile(CommandLine cmd, File corpus, Corpus mappedCorpus, int n,
+                                              File modelFile)
+            throws IOException, InterruptedException, ExecutionException {
+        if (cmd.hasOption("mem")) {
+            long memoryBudget = Long.parseLong(cmd.getOptionValue("mem")) << 20;
+            return parse.processFilesToModel(corpus, n, memoryBudget, modelFile);
+        }
+        NGramStore store = countNGrams(cmd, corpus, mappedCorpus, n);
+        lm.createModel(store, false);
+        ModelFile.write(store, modelFile);
+        return ModelFile.open(modelFile);
+    }
+
     /**
      * Main method for testing.
      *
@@ -81,7 +246,49 @@ public class PlaintextRecovery {
         options.addOption("c", true, "Specify the name of the corpus (file or directory) to train the language model.");
         options.addOption("P", true, "The prune number used in the pruning operation during Beam Search.");
         options.addOption("pl", true, "The length of the xor of ciphertext (length of plaintext candidates).");
-        options.addOption("k", true, "How many times the keystream was re-used (either 2 or 3).");
+        options.addOption("k", true, "How many times the keystream was re-used (2 to " +
+                BeamSearch.MAX_K + ").");
+        options.addOption("mem", true, "Count n-grams in one streaming pass, writing counts to temporary files " +
+                "beyond this many megabytes and merging them straight into a model file (except with -kn).");
+        options.addOption("build", true, "Build the laplace smoothed language model from the corpus, write it to this model file " +
+                "and exit.");
+        options.addOption("model", true, "Load the language model from this model file instead of building it " +
+                "from the corpus. With -serve, a comma separated list of model files to serve.");
+        options.addOption("kn", "Score candidates with an interpolated Kneser-Ney language model instead of " +
+                "laplace smoothing.");
+        options.addOption("joint", "Encrypt the k plaintexts with one random keystream and recover them jointly " +
+                "from the k ciphertexts.");
+        options.addOption("cache", true, "Cache up to this many rows of log probabilities in front of the language " +
+                "model, and print how often the cache was hit.");
+        options.addOption("metrics", true, "Write the counters, timers and histograms of the run to this file at " +
+                "the end, as JSON if its name ends in .json and in the Prometheus text format otherwise.");
+        options.addOption("metricsEvery", true, "Also rewrite the -metrics file every this many seconds during " +
+                "the run.");
+        options.addOption("serve", true, "Keep the language models loaded and recover the XORs posted to " +
+                "http://127.0.0.1:<port>/recover instead of a random pair of plaintexts.");
+        options.addOption("queue", true, "With -serve, the most jobs waiting for a thread before requests are " +
+                "read more slowly.");
+        options.addOption("maxP", true, "With -serve, the largest P a request may ask for (10000 by default).");
+        options.addOption("maxK", true, "With -serve, the largest k a request may ask for (" + BeamSearch.MAX_K +
+                " by default).");
+        options.addOption("maxLength", true, "With -serve, the most bytes of a XOR a job may search (4096 by " +
+                "default).");
+        options.addOption("window", true, "With -k 2, search windows of this many positions of the XOR in " +
+                "parallel and stitch their candidates together where they overlap.");
+        options.addOption("overlap", true, "With -window, the positions shared by neighbouring windows " +
+                "(default a quarter of the window).");
+        options.addOption("margin", true, "Keep the candidates within this log probability of the most probable " +
+                "one at each position, between -minP and -P of them, instead of always -P.");
+        options.addOption("minP", true, "With -margin or -budget, the fewest candidates kept at a position " +
+                "(default 1).");
+        options.addOption("budget", true, "Keep fewer candidates where needed so that a search scores at most " +
+                "this many extensions.");
+        options.addOption("eval", true, "Run -trials seeded trials for every combination of -n, -P, -pl and -k, " +
+                "each of which may be a comma separated list, and write the results of every trial to this CSV file.");
+        options.addOption("trials", true, "With -eval, the number of trials for each combination (default 100).");
+        options.addOption("seed", true, "With -eval, the seed the plaintexts of the trials are drawn from " +
+                "(default 0).");
+        options.addOption("d", "Bake the conditional log probabilities of the language model into a dense table.");
         options.addOption("t", true, "The percentage of -P to search for actual plaintexts in the plaintext candidates.");
         options.addOption("h", "Help option giving users details of options available and what they do.");
         options.addOption("help", "Help option giving users details of options available and what they do.");
@@ -107,11 +314,16 @@ public class PlaintextRecovery {
             String corpusPath = cmd.getOptionValue("c");
             System.out.println(corpusPath);
             corpus = new File(corpusPath);
-        } else {
+        } else if (!cmd.hasOption("serve") || !cmd.hasOption("model")) {
             System.err.println("You must specify a corpus.");
             System.exit(1);
         }
 
+        if (cmd.hasOption("eval")) {
+            evaluate(cmd, corpus);
+            return;
+        }
+
         if (cmd.hasOption("n")) {
             n = Integer.parseInt(cmd.getOptionValue("n"));
         } else {
@@ -148,23 +360,262 @@ public class PlaintextRecovery {
                     t + "% of plaintext candidates list.");
         }
 
-        String stringCorpus = parse.fileToString(corpus);
-        System.out.println("\ncorpus length: " + stringCorpus.length() + "\n");
-        ConcurrentHashMap<String, Integer> ngramModel;
-        String[] plaintexts = beam.getPlaintextValues(ptxtCandLength, keystreamReuse, stringCorpus);
-        System.out.println("\nPlaintexts to recover:\n" + Arrays.toString(plaintexts) + "\n");
-        byte[] xorOfCiphertext = beam.getXOROfPlaintext(plaintexts, keystreamReuse);
-        ngramModel = parse.processFiles(corpus, n);
-        ConcurrentHashMap<String, Integer>[] mapArr = split.splitMap(ngramModel, n);
-        HashMap<String, Double> languageModel = lm.createModel(mapArr, stringCorpus);
+        File metricsFile = cmd.hasOption("metrics") ? new File(cmd.getOptionValue("metrics")) : null;
+        if (metricsFile != null && cmd.hasOption("metricsEvery")) {
+            Metrics.DEFAULT.writeEvery(metricsFile, Long.parseLong(cmd.getOptionValue("metricsEvery")),
+                    TimeUnit.SECONDS);
+        }
 
-        ArrayList<Tuple> candidates;
-        candidates = beam.beamSearch(stringCorpus, mapArr, languageModel, n, pruneNumber, xorOfCiphertext);
-        System.out.println("\n\nMost probable plaintext candidates:");
-        getTopPlaintextCandidates(candidates);
-        System.out.println("\nRecovered plaintexts successfully in top " + t + "% of " + pruneNumber +
-                " possible candidates? " + recoveredPlaintextsSuccefully(plaintexts, candidates, t));
+        if (cmd.hasOption("serve")) {
+            serve(cmd, corpus, n);
+            return;
+        }
+
+        Corpus mappedCorpus = Corpus.map(corpus);
+        System.out.println("\ncorpus length: " + mappedCorpus.length() + "\n");
+
+        if (cmd.hasOption("build")) {
+            File modelFile = new File(cmd.getOptionValue("build"));
+            ignoredWithModelFile(cmd, "-build");
+            buildModelFile(cmd, corpus, mappedCorpus, n, modelFile);
+            System.out.println("Wrote the language model to " + modelFile + " (" + modelFile.length() + " bytes)");
+            writeMetrics(metricsFile);
+            System.exit(0);
+        }
+
+        // The plaintexts stay bytes until the results are printed.
+        byte[][] plaintexts = BeamSearch.getPlaintextBytes(ptxtCandLength, keystreamReuse, mappedCorpus,
+                new Random());
+        System.out.println("\nPlaintexts to recover:\n" + Arrays.toString(decode(plaintexts)) + "\n");
+        byte[] xorOfCiphertext = BeamSearch.getXOROfPlaintext(plaintexts);
+        Scorer languageModel;
+        if (cmd.hasOption("model")) {
+            ignoredWithModelFile(cmd, "-model");
+            MappedModel model = ModelFile.open(new File(cmd.getOptionValue("model")));
+            if (model.getN() != n) {
+                System.out.println("n set to " + model.getN() + " by the model file");
+                n = model.getN();
+            }
+            languageModel = model;
+        } else {
+            languageModel = createLanguageModel(cmd, corpus, mappedCorpus, n);
+        }
+
+        ScoreCache cache = null;
+        if (cmd.hasOption("cache") && !cmd.hasOption("joint")) {
+            cache = new ScoreCache(languageModel, Integer.parseInt(cmd.getOptionValue("cache")));
+            languageModel = cache;
+        }
+
+        beam.setThreads(split.getThreadNumber());
+        System.out.println("Scoring pairs with the " + ScoringKernel.create().getName() + " kernel");
+        if (cmd.hasOption("joint")) {
+            byte[][] ciphertexts = encryptWithOneKeystream(plaintexts);
+            int cacheRows = cmd.hasOption("cache") ? Integer.parseInt(cmd.getOptionValue("cache"))
+                    : JOINT_CACHE_ROWS;
+            ArrayList<PlaintextCandidate> candidates;
+            try (BatchRecovery batch = new BatchRecovery(languageModel, cacheRows)) {
+                batch.setThreads(split.getThreadNumber());
+                candidates = batch.recover(ciphertexts, pruneNumber);
+                printCacheStatistics(batch.getCache());
+            }
+            System.out.println("\n\nMost probable plaintext candidates:");
+            getTopPlaintextCandidates(candidates);
+            System.out.println("\nRecovered plaintexts successfully in top " + t + "% of " + pruneNumber +
+                    " possible candidates? " + recoveredAllPlaintexts(plaintexts, candidates, t));
+        } else if (cmd.hasOption("margin") || cmd.hasOption("budget")) {
+            BeamWidth width = beamWidth(cmd, pruneNumber);
+            ArrayList<PlaintextCandidate> candidates = beam.beamSearch(languageModel, n, width, xorOfCiphertext,
+                    keystreamReuse);
+            System.out.println("\n\nMost probable plaintext candidates:");
+            getTopPlaintextCandidates(candidates);
+            System.out.println("\nRecovered plaintexts successfully in top " + t + "% of " + candidates.size() +
+                    " candidates? " + recoveredAllPlaintexts(plaintexts, candidates, t));
+            System.out.println("\nBeam widths: " + Arrays.toString(width.getWidths()));
+            System.out.println(String.format("Mean width %.1f of at most %d, %d extensions scored",
+                    width.getMeanWidth(), pruneNumber, width.getScored()));
+        } else if (keystreamReuse == 2 && cmd.hasOption("window")) {
+            int window = Integer.parseInt(cmd.getOptionValue("window"));
+            int overlap = cmd.hasOption("overlap") ? Integer.parseInt(cmd.getOptionValue("overlap"))
+                    : Math.max(2, window / 4);
+            SegmentedRecovery segmented = new SegmentedRecovery(languageModel, n, pruneNumber, window, overlap);
+            segmented.setThreads(split.getThreadNumber());
+            ArrayList<PlaintextCandidate> candidates = new ArrayList<>();
+            candidates.add(segmented.recover(xorOfCiphertext));
+            System.out.println("\n\nStitched plaintexts (" + segmented.getBreaks() + " windows did not fit):");
+            getTopPlaintextCandidates(candidates);
+            System.out.println("\nRecovered plaintexts successfully? " +
+                    recoveredAllPlaintexts(plaintexts, candidates, 100));
+        } else if (keystreamReuse == 2) {
+            ArrayList<Tuple> candidates = beam.beamSearch(languageModel, n, pruneNumber, xorOfCiphertext);
+            System.out.println("\n\nMost probable plaintext candidates:");
+            getTopPlaintextCandidates(candidates);
+            System.out.println("\nRecovered plaintexts successfully in top " + t + "% of " + pruneNumber +
+                    " possible candidates? " + recoveredPlaintextsSuccefully(decode(plaintexts), candidates, t));
+        } else {
+            ArrayList<PlaintextCandidate> candidates = beam.beamSearch(languageModel, n, pruneNumber,
+                    xorOfCiphertext, keystreamReuse);
+            System.out.println("\n\nMost probable plaintext candidates:");
+            getTopPlaintextCandidates(candidates);
+            System.out.println("\nRecovered plaintexts successfully in top " + t + "% of " + pruneNumber +
+                    " possible candidates? " + recoveredAllPlaintexts(plaintexts, candidates, t));
+        }
+        beam.close();
+        if (cache != null) {
+            printCacheStatistics(cache);
+        }
+        writeMetrics(metricsFile);
+
+    }
+
+    /**
+     * A method that loads the language models, from the -model files or else from the corpus, and serves recovery
+     * jobs for them until the JVM is stopped.
+     */
+    private static void serve(CommandLine cmd, File corpus, int n)
+            throws IOException, InterruptedException, ExecutionException {
+        Map<String, Scorer> models = new LinkedHashMap<>();
+        if (cmd.hasOption("model")) {
+            ignoredWithModelFile(cmd, "-model");
+            for (String path : cmd.getOptionValue("model").split(",")) {
+                File modelFile = new File(path.trim());
+                models.put(modelName(modelFile), ModelFile.open(modelFile));
+            }
+        } else {
+            models.put(modelName(corpus), createLanguageModel(cmd, corpus, Corpus.map(corpus), n));
+        }
+        if (cmd.hasOption("cache")) {
+            int rows = Integer.parseInt(cmd.getOptionValue("cache"));
+            for (Map.Entry<String, Scorer> model : models.entrySet()) {
+                model.setValue(new ScoreCache(model.getValue(), rows));
+            }
+        }
+
+        int threads = split.getThreadNumber();
+        int queue = cmd.hasOption("queue") ? Integer.parseInt(cmd.getOptionValue("queue")) : threads * 64;
+        RecoveryServer server = new RecoveryServer(models, threads, queue);
+        if (cmd.hasOption("maxP")) {
+            server.setMaxPruneNumber(Integer.parseInt(cmd.getOptionValue("maxP")));
+        }
+        if (cmd.hasOption("maxK")) {
+            server.setMaxK(Integer.parseInt(cmd.getOptionValue("maxK")));
+        }
+        if (cmd.hasOption("maxLength")) {
+            server.setMaxLength(Integer.parseInt(cmd.getOptionValue("maxLength")));
+        }
+        server.warmUp(SERVER_WARM_UP_SEARCHES);
+        int port = server.start(Integer.parseInt(cmd.getOptionValue("serve")));
+        for (Map.Entry<String, Scorer> model : models.entrySet()) {
+            System.out.println("Serving the model " + model.getKey() + " (n = " + model.getValue().getN() + ")");
+        }
+        System.out.println("Recovering the XORs posted to http://127.0.0.1:" + port + "/recover with " + threads +
+                " threads, scoring pairs with the " + ScoringKernel.create().getName() + " kernel");
+    }
+
+    /**
+     * A method that runs the trials of an evaluation over the grid of settings given on the command line, with one
+     * language model of the largest n, and writes them to the -eval file.
+     */
+    private static void evaluate(CommandLine cmd, File corpus)
+            throws IOException, InterruptedException, ExecutionException {
+        int[] ns = intList(cmd, "n", 3);
+        int[] pruneNumbers = intList(cmd, "P", 100);
+        int[] lengths = intList(cmd, "pl", 10);
+        int[] ks = intList(cmd, "k", 2);
+        int trials = cmd.hasOption("trials") ? Integer.parseInt(cmd.getOptionValue("trials")) : 100;
+        long seed = cmd.hasOption("seed") ? Long.parseLong(cmd.getOptionValue("seed")) : 0;
+        File metricsFile = cmd.hasOption("metrics") ? new File(cmd.getOptionValue("metrics")) : null;
+
+        Corpus mappedCorpus = Corpus.map(corpus);
+        Scorer languageModel;
+        if (cmd.hasOption("model")) {
+            ignoredWithModelFile(cmd, "-model");
+            languageModel = ModelFile.open(new File(cmd.getOptionValue("model")));
+        } else {
+            int maxN = 0;
+            for (int n : ns) {
+                maxN = Math.max(maxN, n);
+            }
+            languageModel = createLanguageModel(cmd, corpus, mappedCorpus, maxN);
+        }
+        if (cmd.hasOption("cache")) {
+            languageModel = new ScoreCache(languageModel, Integer.parseInt(cmd.getOptionValue("cache")));
+        }
+
+        Evaluation evaluation = new Evaluation(languageModel, mappedCorpus, seed);
+        evaluation.setThreads(split.getThreadNumber());
+        if (cmd.hasOption("margin") || cmd.hasOption("budget")) {
+            BeamWidth width = beamWidth(cmd, Integer.MAX_VALUE);
+            evaluation.setWidths(width.getMargin(), width.getMinWidth(),
+                    cmd.hasOption("budget") ? Long.parseLong(cmd.getOptionValue("budget")) : 0);
+        }
+        List<Evaluation.Trial> results = evaluation.run(ns, pruneNumbers, lengths, ks, trials);
+        File csv = new File(cmd.getOptionValue("eval"));
+        Evaluation.writeCsv(results, csv);
+        System.out.println("\n" + Evaluation.summary(results));
+        System.out.println("Wrote " + results.size() + " trials to " + csv);
+        writeMetrics(metricsFile);
+    }
+
+    /**
+     * @return : The beam width given by -margin, -minP and -budget, keeping at most 'maxWidth' candidates.
+     */
+    private static BeamWidth beamWidth(CommandLine cmd, int maxWidth) {
+        double margin = cmd.hasOption("margin") ? Double.parseDouble(cmd.getOptionValue("margin"))
+                : Double.POSITIVE_INFINITY;
+        int minWidth = cmd.hasOption("minP") ? Integer.parseInt(cmd.getOptionValue("minP")) : 1;
+        BeamWidth width = new BeamWidth(margin, Math.min(minWidth, maxWidth), maxWidth);
+        if (cmd.hasOption("budget")) {
+            width.setBudget(Long.parseLong(cmd.getOptionValue("budget")));
+        }
+        return width;
+    }
+
+    /**
+     * @return : The comma separated integers of an option, or the default if the option is not given.
+     */
+    private static int[] intList(CommandLine cmd, String option, int defaultValue) {
+        if (!cmd.hasOption(option)) {
+            return new int[]{defaultValue};
+        }
+        String[] values = cmd.getOptionValue(option).split(",");
+        int[] parsed = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            parsed[i] = Integer.parseInt(values[i].trim());
+        }
+        return parsed;
+    }
+
+    /**
+     * @return : The name of the file without its extension, which jobs use to choose a model.
+     */
+    private static String modelName(File f) {
+        String name = f.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * A method that writes the metrics of the run to the given file, if there is one.
+     */
+    private static void writeMetrics(File metricsFile) throws IOException {
+        if (metricsFile != null) {
+            Metrics.DEFAULT.write(metricsFile);
+            System.out.println("\nWrote the metrics to " + metricsFile);
+        }
+    }
+
+    private static String[] decode(byte[][] plaintexts) {
+        String[] decoded = new String[plaintexts.length];
+        for (int i = 0; i < plaintexts.length; i++) {
+            decoded[i] = Lattice.decode(plaintexts[i]);
+        }
+        return decoded;
+    }
 
+    private static void printCacheStatistics(ScoreCache cache) {
+        System.out.println("\nScore cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " +
+                cache.getEvictions() + " evictions, " + cache.size() + " of " + cache.capacity() + " rows held");
     }
 
 }
@@ -0,0 +1,516 @@
+package beamSearch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import languageModel.Metrics;
+import languageModel.Scorer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class that keeps language models loaded and recovers plaintexts for jobs sent to it over HTTP on the loopback
+ * interface, so a job only pays for its search and not for starting the JVM, warming up the JIT and building the
+ * model. The endpoints are:
+ *   POST /recover : Recovers the plaintexts of every line of the body, each the XOR of the ciphertexts in hex.
+ *                   The query may set the model (the first one by default), n (the model's n by default), P (100),
+ *                   k (2) and top, the number of candidates returned per job (10, and never more than P). Each
+ *                   job is written back as one line of JSON as soon as it is done, so the lines come back in the
+ *                   order the jobs finish.
+ *   GET  /models  : The name and n of every model, as JSON.
+ *   GET  /metrics : The metrics of the server, in the Prometheus text format.
+ *
+ * Jobs are run on a fixed number of threads, each job searching on one thread. At most 'queueCapacity' jobs wait
+ * for a thread, and a request with more lines than that is read no faster than its jobs are started, so a client
+ * sending thousands of XORs is slowed down rather than refused. A search keeps P candidates at each position and
+ * its work grows with the length of the XOR and exponentially with k, so a request asking for more than
+ * 'setMaxPruneNumber' or 'setMaxK' allow is refused, and a XOR longer than 'setMaxLength' allows fails as its job,
+ * rather than either holding a thread indefinitely or exhausting the heap.
+ *
+ * @author Shaquille Momoh
+ */
+public class RecoveryServer {
+
+    private static final int DEFAULT_PRUNE_NUMBER = 100;
+    private static final int DEFAULT_TOP = 10;
+    private static final int DEFAULT_MAX_PRUNE_NUMBER = 10000;
+    private static final int DEFAULT_MAX_LENGTH = 4096;
+
+    private static final Metrics.Counter JOBS = Metrics.DEFAULT.counter("server_jobs_total",
+            "Recovery jobs run by the server.");
+    private static final Metrics.Counter FAILED_JOBS = Metrics.DEFAULT.counter("server_jobs_failed_total",
+            "Recovery jobs that could not be parsed or run.");
+    private static final Metrics.Timer JOB_TIME = Metrics.DEFAULT.timer("server_job_seconds",
+            "Time taken to search for the plaintexts of one job, excluding the time it waited for a thread.");
+    private static final Metrics.Timer QUEUE_TIME = Metrics.DEFAULT.timer("server_queue_seconds",
+            "Time a job waited for a thread.");
+
+    private final Map<String, Scorer> models;
+    private final String defaultModel;
+    private final BeamSearch beam = new BeamSearch();
+    private final ExecutorService jobs;
+    private final Semaphore slots;
+    private volatile int maxPruneNumber = DEFAULT_MAX_PRUNE_NUMBER;
+    private volatile int maxK = BeamSearch.MAX_K;
+    private volatile int maxLength = DEFAULT_MAX_LENGTH;
+    private HttpServer server;
+    private ExecutorService requests;
+
+    /**
+     * A constructor that creates a server for the given models. Nothing is served until 'start' is called.
+     *
+     * @param models        : The language models jobs may use, by name. The first is used when a job names none.
+     * @param threads       : The number of jobs run at the same time.
+     * @param queueCapacity : The most jobs waiting for a thread.
+     */
+    public RecoveryServer(Map<String, Scorer> models, int threads, int queueCapacity) {
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("The server needs at least one model");
+        }
+        if (threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("The server needs at least 1 thread and a queue of at least 0 jobs " +
+                    "but was given " + threads + " and " + queueCapacity);
+        }
+        this.models = new LinkedHashMap<>(models);
+        this.defaultModel = models.keySet().iterator().next();
+        this.slots = new Semaphore(threads + queueCapacity);
+        this.jobs = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory("recovery-job"));
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * A method that sets the largest P a request may ask for.
+     *
+     * @param maxPruneNumber : The largest prune number, at least 1.
+     */
+    public void setMaxPruneNumber(int maxPruneNumber) {
+        if (maxPruneNumber < 1) {
+            throw new IllegalArgumentException("The largest P must be at least 1 but was " + maxPruneNumber);
+        }
+        this.maxPruneNumber = maxPruneNumber;
+    }
+
+    /**
+     * A method that sets the largest k a request may ask for.
+     *
+     * @param maxK : The largest number of times the keystream was reused, from 2 to 'BeamSearch.MAX_K'.
+     */
+    public void setMaxK(int maxK) {
+        if (maxK < 2 || maxK > BeamSearch.MAX_K) {
+            throw new IllegalArgumentException("The largest k must be between 2 and " + BeamSearch.MAX_K +
+                    " but was " + maxK);
+        }
+        this.maxK = maxK;
+    }
+
+    /**
+     * A method that sets the longest XOR a job may search.
+     *
+     * @param maxLength : The most bytes of a XOR, at least 1.
+     */
+    public void setMaxLength(int maxLength) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("The longest XOR must be at least 1 byte but was " + maxLength);
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * A method that runs a few searches on random XORs with every model, so the JIT has compiled the search
+     * before the first job arrives.
+     *
+     * @param searches : The number of searches per model.
+     */
+    public void warmUp(int searches) {
+        Random random = new Random(0);
+        for (Scorer model : models.values()) {
+            for (int i = 0; i < searches; i++) {
+                byte[] xor = new byte[32];
+                random.nextBytes(xor);
+                for (int j = 0; j < xor.length; j++) {
+                    xor[j] &= 0x1F;
+                }
+                beam.beamSearch(model, model.getN(), DEFAULT_PRUNE_NUMBER, xor, 2);
+            }
+        }
+    }
+
+    /**
+     * A method that starts serving on the loopback interface.
+     *
+     * @param port : The port to listen on, or 0 for any free port.
+     * @return : The port the server is listening on.
+     * @throws IOException
+     */
+    public synchronized int start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalArgumentException("The server is already running");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/recover", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handleRecover(exchange);
+            }
+        });
+        server.createContext("/models", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handleModels(exchange);
+            }
+        });
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "text/plain; version=0.0.4", Metrics.DEFAULT.toPrometheus());
+            }
+        });
+        // Requests only parse their lines and wait for their jobs, so they get threads of their own.
+        requests = Executors.newCachedThreadPool(threadFactory("recovery-request"));
+        server.setExecutor(requests);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * A method that stops serving, abandoning any job that has not finished.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            requests.shutdownNow();
+        }
+        jobs.shutdownNow();
+        beam.close();
+    }
+
+    private void handleModels(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        String separator = "";
+        for (Map.Entry<String, Scorer> model : models.entrySet()) {
+            json.append(separator).append("{\"name\": ");
+            appendString(json, model.getKey());
+            json.append(", \"n\": ").append(model.getValue().getN()).append('}');
+            separator = ", ";
+        }
+        respond(exchange, 200, "application/json", json.append("]\n").toString());
+    }
+
+    private void handleRecover(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "text/plain", "Jobs must be sent with POST\n");
+            return;
+        }
+        final Job template;
+        try {
+            template = parseQuery(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        final Response response = new Response(exchange.getResponseBody());
+        List<Future<?>> submitted = new ArrayList<>();
+
+        try (BufferedReader body = new BufferedReader(new InputStreamReader(exchange.getRequestBody(),
+                StandardCharsets.US_ASCII))) {
+            String line;
+            int id = 0;
+            while ((line = body.readLine()) != null && !response.closed) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final int jobId = id++;
+                final byte[] xor;
+                try {
+                    xor = parseHex(line, maxLength);
+                } catch (IllegalArgumentException e) {
+                    FAILED_JOBS.increment();
+                    response.write(error(jobId, e.getMessage()));
+                    continue;
+                }
+                slots.acquireUninterruptibly();
+                final long queued = System.nanoTime();
+                submitted.add(jobs.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            QUEUE_TIME.since(queued);
+                            if (!response.closed) {
+                                response.write(recover(jobId, template.withXor(xor)));
+                            }
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                }));
+            }
+        } finally {
+            // The response is only complete once every job of the request has written its line.
+            for (Future<?> job : submitted) {
+                try {
+                    job.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // The job has already written its error.
+                }
+            }
+            response.close();
+        }
+    }
+
+    /**
+     * A method that runs one job, returning the line of JSON holding its top candidates or why it failed.
+     */
+    private String recover(int id, Job job) {
+        long start = System.nanoTime();
+        try {
+            List<PlaintextCandidate> candidates = beam.beamSearch(job.model, job.n, job.pruneNumber, job.xor,
+                    job.k);
+            JOB_TIME.since(start);
+            JOBS.increment();
+
+            StringBuilder json = new StringBuilder("{\"job\": ").append(id);
+            json.append(", \"millis\": ").append((System.nanoTime() - start) / 1000000);
+            json.append(", \"candidates\": [");
+            int top = Math.min(job.top, candidates.size());
+            for (int i = 0; i < top; i++) {
+                PlaintextCandidate candidate = candidates.get(i);
+                json.append(i == 0 ? "" : ", ").append("{\"logProbability\": ")
+                        .append(candidate.getLogProbability()).append(", \"plaintexts\": [");
+                byte[][] plaintexts = candidate.getPlaintextBytes();
+                for (int p = 0; p < plaintexts.length; p++) {
+                    json.append(p == 0 ? "" : ", ");
+                    appendString(json, new String(plaintexts[p], StandardCharsets.ISO_8859_1));
+                }
+                json.append("]}");
+            }
+            return json.append("]}\n").toString();
+        } catch (RuntimeException e) {
+            FAILED_JOBS.increment();
+            return error(id, e.toString());
+        }
+    }
+
+    private static String error(int id, String message) {
+        StringBuilder json = new StringBuilder("{\"job\": ").append(id).append(", \"error\": ");
+        appendString(json, message);
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * A method that reads the settings shared by every job of a request from its query.
+     *
+     * @param query : The raw query of the request, which may be null.
+     * @return : A job without a XOR.
+     */
+    private Job parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query != null && !query.isEmpty()) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                try {
+                    params.put(URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8"),
+                            eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        String name = params.containsKey("model") ? params.get("model") : defaultModel;
+        Scorer model = models.get(name);
+        if (model == null) {
+            throw new IllegalArgumentException("There is no model called " + name + ", only " + models.keySet());
+        }
+        int n = intParam(params, "n", model.getN());
+        if (n < 1 || n > model.getN()) {
+            throw new IllegalArgumentException("n must be between 1 and " + model.getN() + " for the model " +
+                    name + " but was " + n);
+        }
+        int pruneNumber = intParam(params, "P", DEFAULT_PRUNE_NUMBER);
+        int k = intParam(params, "k", 2);
+        int top = intParam(params, "top", DEFAULT_TOP);
+        if (pruneNumber < 1 || k < 2 || top < 0) {
+            throw new IllegalArgumentException("P must be at least 1, k at least 2 and top at least 0 but were " +
+                    pruneNumber + ", " + k + " and " + top);
+        }
+        if (pruneNumber > maxPruneNumber) {
+            throw new IllegalArgumentException("P must be at most " + maxPruneNumber + " on this server but was " +
+                    pruneNumber);
+        }
+        if (k > maxK) {
+            throw new IllegalArgumentException("k must be at most " + maxK + " on this server but was " + k);
+        }
+        // No more than P candidates are kept, so no more can be returned.
+        return new Job(model, n, pruneNumber, k, Math.min(top, pruneNumber), null);
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number but was " + value);
+        }
+    }
+
+    /**
+     * A method that decodes a XOR written in hex, two digits per byte.
+     *
+     * @param hex       : The hex digits.
+     * @param maxLength : The most bytes the XOR may have.
+     * @return : The bytes.
+     */
+    private static byte[] parseHex(String hex, int maxLength) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("A XOR needs two hex digits per byte but had " + hex.length());
+        }
+        if (hex.length() / 2 > maxLength) {
+            throw new IllegalArgumentException("A XOR must be at most " + maxLength + " bytes on this server but was " +
+                    hex.length() / 2);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("A XOR must be hex but had " + hex.substring(2 * i, 2 * i + 2));
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * A method that appends a string to JSON, escaping quotes, backslashes and every byte outside printable Ascii.
+     */
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 32 || c > 126) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String text)
+            throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * A class holding the settings of one recovery job.
+     */
+    private static class Job {
+
+        final Scorer model;
+        final int n;
+        final int pruneNumber;
+        final int k;
+        final int top;
+        final byte[] xor;
+
+        Job(Scorer model, int n, int pruneNumber, int k, int top, byte[] xor) {
+            this.model = model;
+            this.n = n;
+            this.pruneNumber = pruneNumber;
+            this.k = k;
+            this.top = top;
+            this.xor = xor;
+        }
+
+        Job withXor(byte[] xor) {
+            return new Job(model, n, pruneNumber, k, top, xor);
+        }
+
+    }
+
+    /**
+     * A class writing the lines of a response as the jobs of a request finish. Once the client has gone, every
+     * job of the request that has not started is skipped.
+     */
+    private static class Response {
+
+        private final OutputStream out;
+        volatile boolean closed;
+
+        Response(OutputStream out) {
+            this.out = out;
+        }
+
+        synchronized void write(String line) {
+            if (closed) {
+                return;
+            }
+            try {
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                closed = true;
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The client has already gone.
+            }
+        }
+
+    }
+
+}
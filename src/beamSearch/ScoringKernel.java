@@ -0,0 +1,77 @@
+package beamSearch;
+
+/**
+ * A class that scores every extension of a pair candidate at once. Each extension chooses a character for the
+ * first plaintext and takes its XOR partner for the second, and both contexts are the same for all of them, so
+ * the scores are two reads from the rows of the contexts and three additions. Doing this for all extensions in
+ * one loop, before any of them is offered to the selector, leaves a loop the JIT can unroll and vectorise.
+ *
+ * This class is the scalar kernel. When the Vector API (jdk.incubator.vector) is available, 'create' returns
+ * 'VectorScoringKernel' instead, which gathers and adds the scores in SIMD lanes. It is built separately, since
+ * the Vector API needs Java 16 or later and '--add-modules jdk.incubator.vector', and is only used if its class is
+ * on the class path and the module was added. Setting the system property 'twotimepad.vector' to false always
+ * uses the scalar kernel. Both kernels give exactly the same scores.
+ *
+ * @author Shaquille Momoh
+ */
+public class ScoringKernel {
+
+    private static final String VECTOR_KERNEL = "beamSearch.VectorScoringKernel";
+
+    private static final ScoringKernel DEFAULT = load();
+
+    /**
+     * @return : The fastest kernel available, shared by every caller since kernels hold no state.
+     */
+    public static ScoringKernel create() {
+        return DEFAULT;
+    }
+
+    private static ScoringKernel load() {
+        if (Boolean.parseBoolean(System.getProperty("twotimepad.vector", "true"))) {
+            try {
+                return (ScoringKernel) Class.forName(VECTOR_KERNEL).getConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // The vector kernel was not built, or the jdk.incubator.vector module was not added.
+            }
+        }
+        return new ScoringKernel();
+    }
+
+    /**
+     * A method that scores 'count' extensions of a candidate. Extension i chooses 'chars[i]' for the first
+     * plaintext and 'partners[i]' for the second, and is scored as:
+     *   scoresOne[i] = probOne + rowOne[chars[i]]
+     *   scoresTwo[i] = probTwo + rowTwo[partners[i]]
+     *   totals[i]    = scoresOne[i] + scoresTwo[i]
+     *
+     * @param rowOne    : The log probability of every character following the context of the first plaintext.
+     * @param chars     : The character of the first plaintext of each extension, below ROW_WIDTH.
+     * @param probOne   : The log probability of the first plaintext of the candidate.
+     * @param rowTwo    : The log probability of every character following the context of the second plaintext.
+     * @param partners  : The character of the second plaintext of each extension, below ROW_WIDTH.
+     * @param probTwo   : The log probability of the second plaintext of the candidate.
+     * @param scoresOne : The array to fill with the log probability of the first plaintext of each extension.
+     * @param scoresTwo : The array to fill with the log probability of the second plaintext of each extension.
+     * @param totals    : The array to fill with the combined log probability of each extension.
+     * @param count     : The number of extensions.
+     */
+    public void score(double[] rowOne, int[] chars, double probOne, double[] rowTwo, int[] partners, double probTwo,
+                      double[] scoresOne, double[] scoresTwo, double[] totals, int count) {
+        for (int i = 0; i < count; i++) {
+            double one = probOne + rowOne[chars[i]];
+            double two = probTwo + rowTwo[partners[i]];
+            scoresOne[i] = one;
+            scoresTwo[i] = two;
+            totals[i] = one + two;
+        }
+    }
+
+    /**
+     * @return : The name of the kernel, for reports.
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+}
@@ -0,0 +1,321 @@
+package beamSearch;
+
+import languageModel.Metrics;
+import languageModel.Scorer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A class that recovers the two plaintexts of a long XOR by splitting it into overlapping windows, searching every
+ * window with its own Beam Search in parallel, and stitching the candidates of neighbouring windows together
+ * where they agree on the overlap.
+ *
+ * Window w covers the positions from w * (window - overlap), and shares 'overlap' positions with the next window.
+ * A window starts without any context, so the first half of each overlap is left to the window before it, and
+ * two candidates of neighbouring windows fit together if they hold the same bytes in the second half. As in
+ * 'Tuple.equals', a candidate with its plaintexts swapped is the same candidate, so a candidate of the next window
+ * fits either way round, and which way round it is used decides which plaintext its bytes continue. The stitched
+ * plaintexts are the chain of fitting candidates, one per window, with the highest total log probability, found
+ * window by window (as in the Viterbi algorithm). When no candidate of a window fits any chain of the windows
+ * before it, the chain starts again from the most probable of them, turned the way round that agrees with it on
+ * the most bytes of the overlap.
+ *
+ * @author Shaquille Momoh
+ */
+public class SegmentedRecovery {
+
+    private static final Metrics.Timer WINDOW_TIME = Metrics.DEFAULT.timer("segment_window_seconds",
+            "Time taken to search one window of a segmented recovery.");
+    private static final Metrics.Counter BREAKS = Metrics.DEFAULT.counter("segment_breaks_total",
+            "Windows of a segmented recovery none of whose candidates agreed with the window before them.");
+
+    private final BeamSearch beam = new BeamSearch();
+    private final Scorer scorer;
+    private final int n;
+    private final int pruneNumber;
+    private final int window;
+    private final int overlap;
+    private int threads = 1;
+    private int breaks;
+
+    /**
+     * A constructor that creates a segmented recovery.
+     *
+     * @param scorer      : The language model giving the log probability of the next character of a plaintext.
+     * @param n           : The maximum size of ngrams to be stored in the language model.
+     * @param pruneNumber : The number to prune each subsequent candidate list of a window down to.
+     * @param window      : The number of positions of each window.
+     * @param overlap     : The number of positions shared by neighbouring windows, at least 2 and below 'window'.
+     */
+    public SegmentedRecovery(Scorer scorer, int n, int pruneNumber, int window, int overlap) {
+        if (overlap < 2 || overlap >= window) {
+            throw new IllegalArgumentException("The overlap must be at least 2 and less than the window (" + window +
+                    ") but was " + overlap);
+        }
+        this.scorer = scorer;
+        this.n = n;
+        this.pruneNumber = pruneNumber;
+        this.window = window;
+        this.overlap = overlap;
+    }
+
+    /**
+     * A method that sets the number of windows searched at the same time.
+     *
+     * @param threads : The number of threads, for example from 'Split.getThreadNumber'.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1 but was " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * A method that recovers the plaintexts of the XOR of two ciphertexts.
+     *
+     * @param xor : The XOR of the two ciphertexts.
+     * @return : The stitched plaintexts and the total log probability of the windows they were stitched from.
+     * @throws IllegalStateException : If a window has no candidates.
+     */
+    public PlaintextCandidate recover(final byte[] xor) {
+        final int windows = windows(xor.length);
+        final int[] starts = starts(windows);
+        final int[] ends = ends(windows, xor.length);
+
+        final List<ArrayList<PlaintextCandidate>> results = new ArrayList<>(windows);
+        List<RecursiveAction> tasks = new ArrayList<>(windows);
+        for (int w = 0; w < windows; w++) {
+            results.add(null);
+            final int index = w;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    long start = System.nanoTime();
+                    byte[] part = Arrays.copyOfRange(xor, starts[index], ends[index]);
+                    results.set(index, beam.beamSearch(scorer, n, pruneNumber, part, 2));
+                    WINDOW_TIME.since(start);
+                }
+            });
+        }
+        if (threads == 1 || windows == 1) {
+            for (RecursiveAction task : tasks) {
+                task.invoke();
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        return stitch(results, starts, ends, xor.length);
+    }
+
+    /**
+     * @return : The number of windows a XOR of the given length is split into.
+     */
+    private int windows(int length) {
+        int stride = window - overlap;
+        return length <= window ? 1 : (length - overlap + stride - 1) / stride;
+    }
+
+    private int[] starts(int windows) {
+        int[] starts = new int[windows];
+        for (int w = 0; w < windows; w++) {
+            starts[w] = w * (window - overlap);
+        }
+        return starts;
+    }
+
+    private int[] ends(int windows, int length) {
+        int[] ends = new int[windows];
+        for (int w = 0; w < windows; w++) {
+            ends[w] = w == windows - 1 ? length : w * (window - overlap) + window;
+        }
+        return ends;
+    }
+
+    /**
+     * A method that stitches together the candidates of the windows of a XOR, as 'recover' does once every window
+     * has been searched.
+     *
+     * @param results : The candidates of each window, as Beam Search returns them for the bytes of the window.
+     * @param length  : The length of the XOR.
+     * @return : The stitched plaintexts and the total log probability of the windows they were stitched from.
+     * @throws IllegalStateException : If a window has no candidates.
+     */
+    public PlaintextCandidate stitch(List<ArrayList<PlaintextCandidate>> results, int length) {
+        int windows = windows(length);
+        if (results.size() != windows) {
+            throw new IllegalArgumentException("A XOR of length " + length + " has " + windows + " windows but " +
+                    results.size() + " were given");
+        }
+        return stitch(results, starts(windows), ends(windows, length), length);
+    }
+
+    /**
+     * A method that finds the chain of fitting candidates, one per window, with the highest total log probability.
+     * A state is a candidate of a window and the way round it is used: state 2 * c + 1 is candidate c swapped.
+     */
+    private PlaintextCandidate stitch(List<ArrayList<PlaintextCandidate>> results, int[] starts, int[] ends,
+                                      int length) {
+        int windows = results.size();
+        for (int w = 0; w < windows; w++) {
+            if (results.get(w).isEmpty()) {
+                throw new IllegalStateException("Window " + w + " (positions " + starts[w] + " to " + ends[w] +
+                        ") has no candidates to stitch");
+            }
+        }
+        int[][] previous = new int[windows][];
+        double[] best = states(results.get(0));
+        for (int s = 1; s < best.length; s += 2) {
+            // The first window decides which plaintext is the first.
+            best[s] = Double.NEGATIVE_INFINITY;
+        }
+
+        breaks = 0;
+        for (int w = 1; w < windows; w++) {
+            ArrayList<PlaintextCandidate> before = results.get(w - 1);
+            ArrayList<PlaintextCandidate> after = results.get(w);
+            // The second half of the overlap, relative to the start of each window.
+            int from = ends[w - 1] - overlap / 2;
+            int to = ends[w - 1];
+
+            Map<String, List<Integer>> fitting = new HashMap<>();
+            for (int s = 0; s < 2 * after.size(); s++) {
+                String key = overlapKey(after.get(s / 2), s % 2 == 1, from - starts[w], to - starts[w]);
+                List<Integer> states = fitting.get(key);
+                if (states == null) {
+                    states = new ArrayList<>();
+                    fitting.put(key, states);
+                }
+                states.add(s);
+            }
+
+            double[] next = new double[2 * after.size()];
+            Arrays.fill(next, Double.NEGATIVE_INFINITY);
+            previous[w] = new int[next.length];
+            boolean fits = false;
+            for (int s = 0; s < best.length; s++) {
+                if (best[s] == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                String key = overlapKey(before.get(s / 2), s % 2 == 1, from - starts[w - 1], to - starts[w - 1]);
+                List<Integer> states = fitting.get(key);
+                if (states == null) {
+                    continue;
+                }
+                for (int t : states) {
+                    double total = best[s] + after.get(t / 2).getLogProbability();
+                    if (total > next[t]) {
+                        next[t] = total;
+                        previous[w][t] = s;
+                        fits = true;
+                    }
+                }
+            }
+
+            if (!fits) {
+                // Start again from the most probable chain so far.
+                breaks++;
+                BREAKS.increment();
+                int chain = argMax(best);
+                byte[][] tail = oriented(before.get(chain / 2), chain % 2 == 1);
+                for (int c = 0; c < after.size(); c++) {
+                    byte[][] head = after.get(c).getPlaintextBytes();
+                    int agree = 0;
+                    int swapped = 0;
+                    for (int p = from; p < to; p++) {
+                        byte one = tail[0][p - starts[w - 1]];
+                        byte two = tail[1][p - starts[w - 1]];
+                        agree += (head[0][p - starts[w]] == one ? 1 : 0) + (head[1][p - starts[w]] == two ? 1 : 0);
+                        swapped += (head[1][p - starts[w]] == one ? 1 : 0) + (head[0][p - starts[w]] == two ? 1 : 0);
+                    }
+                    int t = 2 * c + (swapped > agree ? 1 : 0);
+                    next[t] = best[chain] + after.get(c).getLogProbability();
+                    previous[w][t] = chain;
+                }
+            }
+            best = next;
+        }
+
+        // Following the chain back from its most probable last state, each window gives the positions up to the
+        // second half of its overlap with the next window.
+        byte[][] plaintexts = new byte[2][length];
+        double[] probabilities = new double[2];
+        int state = argMax(best);
+        for (int w = windows - 1; w >= 0; w--) {
+            PlaintextCandidate candidate = results.get(w).get(state / 2);
+            byte[][] bytes = oriented(candidate, state % 2 == 1);
+            int from = w == 0 ? 0 : ends[w - 1] - overlap / 2;
+            int to = w == windows - 1 ? length : ends[w] - overlap / 2;
+            for (int s = 0; s < 2; s++) {
+                System.arraycopy(bytes[s], from - starts[w], plaintexts[s], from, to - from);
+                probabilities[s] += candidate.getProbabilities()[state % 2 == 1 ? 1 - s : s];
+            }
+            if (w > 0) {
+                state = previous[w][state];
+            }
+        }
+        return new PlaintextCandidate(plaintexts, probabilities);
+    }
+
+    /**
+     * @return : The total log probability of the states of the given candidates, either way round.
+     */
+    private static double[] states(ArrayList<PlaintextCandidate> candidates) {
+        double[] states = new double[2 * candidates.size()];
+        for (int s = 0; s < states.length; s++) {
+            states[s] = candidates.get(s / 2).getLogProbability();
+        }
+        return states;
+    }
+
+    private static int argMax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static byte[][] oriented(PlaintextCandidate candidate, boolean swapped) {
+        byte[][] bytes = candidate.getPlaintextBytes();
+        return swapped ? new byte[][]{bytes[1], bytes[0]} : bytes;
+    }
+
+    /**
+     * @return : The bytes of both plaintexts of a candidate, the given way round, from 'from' (inclusive) to 'to'
+     * (exclusive), as one key.
+     */
+    private static String overlapKey(PlaintextCandidate candidate, boolean swapped, int from, int to) {
+        byte[][] bytes = oriented(candidate, swapped);
+        return new String(bytes[0], from, to - from, StandardCharsets.ISO_8859_1) + '\u0000' +
+                new String(bytes[1], from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return : The number of windows in the last recovery none of whose candidates fitted the windows before them.
+     */
+    public int getBreaks() {
+        return breaks;
+    }
+
+}
@@ -1,7 +1,11 @@
 package beamSearch;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * A class defining a custom data structure to hold plaintext candidates.
+ * Candidates returned by Beam Search hold the bytes of their plaintexts, which are only decoded into Strings
+ * the first time they are asked for, so candidates that are never printed never create a String.
  *
  * @author Shaquille Momoh
  */
@@ -9,11 +13,28 @@ public class Tuple {
 
     private String plaintext_one;
     private String plaintext_two;
+    private byte[] bytes_one;
+    private byte[] bytes_two;
     private Double probability_one;
     private Double probability_two;
 
     public Tuple() {}
 
+    /**
+     * A constructor that creates a candidate from the bytes of its plaintexts, one character per byte.
+     *
+     * @param bytes_one       : The bytes of the first plaintext.
+     * @param bytes_two       : The bytes of the second plaintext.
+     * @param probability_one : The log probability of the first plaintext.
+     * @param probability_two : The log probability of the second plaintext.
+     */
+    public Tuple(byte[] bytes_one, byte[] bytes_two, double probability_one, double probability_two) {
+        this.bytes_one = bytes_one;
+        this.bytes_two = bytes_two;
+        this.probability_one = probability_one;
+        this.probability_two = probability_two;
+    }
+
     public Tuple(String plaintext_one, String plaintext_two, Double percentage_one, Double percentage_two) {
         this.plaintext_one = plaintext_one;
         this.plaintext_two = plaintext_two;
@@ -22,19 +43,47 @@ public class Tuple {
     }
 
     public String getPlaintextOne() {
+        if (plaintext_one == null && bytes_one != null) {
+            plaintext_one = new String(bytes_one, StandardCharsets.ISO_8859_1);
+        }
         return plaintext_one;
     }
 
     public void setPlaintextOne(String plaintext_one) {
         this.plaintext_one = plaintext_one;
+        this.bytes_one = null;
     }
 
     public String getPlaintextTwo() {
+        if (plaintext_two == null && bytes_two != null) {
+            plaintext_two = new String(bytes_two, StandardCharsets.ISO_8859_1);
+        }
         return plaintext_two;
     }
 
     public void setPlaintextTwo(String plaintext_two) {
         this.plaintext_two = plaintext_two;
+        this.bytes_two = null;
+    }
+
+    /**
+     * @return : The bytes of the first plaintext, one byte per character.
+     */
+    public byte[] getBytesOne() {
+        if (bytes_one == null && plaintext_one != null) {
+            bytes_one = plaintext_one.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return bytes_one;
+    }
+
+    /**
+     * @return : The bytes of the second plaintext, one byte per character.
+     */
+    public byte[] getBytesTwo() {
+        if (bytes_two == null && plaintext_two != null) {
+            bytes_two = plaintext_two.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return bytes_two;
     }
 
     public Double getProbOne() {
@@ -0,0 +1,461 @@
+package beamSearchTests;
+
+import beamSearch.BatchRecovery;
+import beamSearch.BeamSearch;
+import beamSearch.BeamStream;
+import beamSearch.BeamWidth;
+import beamSearch.PlaintextCandidate;
+import beamSearch.SegmentedRecovery;
+import beamSearch.Tuple;
+import languageModel.Corpus;
+import languageModel.KneserNeyModel;
+import languageModel.NGramStore;
+import languageModel.ParseCorpus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestBeamSearch {
+
+    private static final int N = 4;
+
+    private NGramStore store;
+    private byte[] xorOfPlaintexts;
+    private byte[] xorOfThreePlaintexts;
+    private byte[][] ciphertexts;
+    private String[] sharedPlaintexts;
+
+    @Before
+    public void setUp() throws Exception {
+        String corpus = new ParseCorpus().fileToString(new File("src/mobydick.txt"));
+        store = new NGramStore(N);
+        store.addNGrams(corpus.substring(0, 200000));
+        store.bakeLaplace();
+
+        String[] plaintexts = {corpus.substring(300000, 300040), corpus.substring(400000, 400040)};
+        xorOfPlaintexts = BeamSearch.getXOROfPlaintext(plaintexts, 2);
+
+        String[] three = {plaintexts[0], plaintexts[1], corpus.substring(500000, 500040)};
+        xorOfThreePlaintexts = BeamSearch.getXOROfPlaintext(three, 3);
+
+        // Three ciphertexts of different lengths sharing one keystream.
+        byte[] keystream = new byte[40];
+        new Random(42).nextBytes(keystream);
+        // Beam Search only extends plaintexts by printable characters, which a newline is not.
+        String[] shared = {three[0], three[1].substring(0, 25), three[2].substring(0, 33).replace('\n', ' ')};
+        sharedPlaintexts = shared;
+        ciphertexts = new byte[3][];
+        for (int i = 0; i < 3; i++) {
+            ciphertexts[i] = shared[i].getBytes(StandardCharsets.ISO_8859_1);
+            for (int j = 0; j < ciphertexts[i].length; j++) {
+                ciphertexts[i][j] ^= keystream[j];
+            }
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        ArrayList<Tuple> serial;
+        ArrayList<Tuple> parallel;
+        try (BeamSearch beam = new BeamSearch()) {
+            serial = beam.beamSearch(store, N, 300, xorOfPlaintexts);
+            beam.setThreads(4);
+            parallel = beam.beamSearch(store, N, 300, xorOfPlaintexts);
+        }
+
+        assertEquals(serial.size(), parallel.size());
+        for (int i = 0; i < serial.size(); i++) {
+            assertEquals(serial.get(i).toString(), parallel.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testClosedSearcherRestartsItsThreads() {
+        BeamSearch beam = new BeamSearch();
+        beam.setThreads(4);
+        ArrayList<Tuple> before = beam.beamSearch(store, N, 300, xorOfPlaintexts);
+        beam.close();
+        beam.close();
+        ArrayList<Tuple> after = beam.beamSearch(store, N, 300, xorOfPlaintexts);
+        beam.close();
+
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).toString(), after.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testThreePlaintextsMatchCiphertext() {
+        ArrayList<PlaintextCandidate> serial;
+        ArrayList<PlaintextCandidate> parallel;
+        try (BeamSearch beam = new BeamSearch()) {
+            serial = beam.beamSearch(store, N, 100, xorOfThreePlaintexts, 3);
+            beam.setThreads(4);
+            parallel = beam.beamSearch(store, N, 100, xorOfThreePlaintexts, 3);
+        }
+
+        assertEquals(100, serial.size());
+        assertEquals(serial.size(), parallel.size());
+        for (int i = 0; i < serial.size(); i++) {
+            assertEquals(serial.get(i).toString(), parallel.get(i).toString());
+
+            // Every byte of every plaintext is printable and the plaintexts XOR to the ciphertext.
+            byte[][] plaintexts = serial.get(i).getPlaintextBytes();
+            for (int position = 0; position < xorOfThreePlaintexts.length; position++) {
+                int xor = 0;
+                for (byte[] plaintext : plaintexts) {
+                    int c = plaintext[position];
+                    assertTrue(c == 13 || (c >= 32 && c <= 126));
+                    xor ^= c;
+                }
+                assertEquals(xorOfThreePlaintexts[position], (byte) xor);
+            }
+        }
+    }
+
+    @Test
+    public void testThreeStreamPruningMatchesBruteForce() {
+        byte[] xor = Arrays.copyOf(xorOfThreePlaintexts, 5);
+        BeamSearch beam = new BeamSearch();
+        for (int pruneNumber : new int[]{3, 20}) {
+            assertMatchesBruteForce(beam, xor, 3, pruneNumber);
+        }
+    }
+
+    /**
+     * Checks that at every position of the XOR, the candidates the search keeps are the top P of every extension
+     * of the candidates it kept at the position before, found without any pruning: all 96^(k-1) choices of the
+     * first k-1 bytes, the last following from the XOR. With k = 2 the pair search keeps partners that are not
+     * printable, and with more plaintexts the last byte must be printable.
+     */
+    private void assertMatchesBruteForce(BeamSearch beam, byte[] xor, int k, int pruneNumber) {
+        String[] empty = new String[k];
+        Arrays.fill(empty, "");
+        List<PlaintextCandidate> previous = new ArrayList<>();
+        previous.add(new PlaintextCandidate(empty, new double[k]));
+        for (int position = 0; position < xor.length; position++) {
+            ArrayList<PlaintextCandidate> pruned = beam.beamSearch(store, N, pruneNumber,
+                    Arrays.copyOf(xor, position + 1), k);
+
+            Map<String, Double> extensions = new HashMap<>();
+            int contextLength = Math.min(position, N - 1);
+            for (PlaintextCandidate candidate : previous) {
+                String[] plaintexts = candidate.getPlaintexts();
+                long[] contexts = new long[k];
+                for (int s = 0; s < k; s++) {
+                    contexts[s] = NGramStore.pack(plaintexts[s], position - contextLength, position);
+                }
+                int[] next = new int[k];
+                extend(candidate, plaintexts, contexts, contextLength, xor[position] & 0xFF, next, 0, extensions);
+            }
+            List<Map.Entry<String, Double>> ranked = new ArrayList<>(extensions.entrySet());
+            Collections.sort(ranked, new Comparator<Map.Entry<String, Double>>() {
+                public int compare(Map.Entry<String, Double> a, Map.Entry<String, Double> b) {
+                    return Double.compare(b.getValue(), a.getValue());
+                }
+            });
+
+            assertEquals(Math.min(pruneNumber, ranked.size()), pruned.size());
+            double least = ranked.get(pruned.size() - 1).getValue();
+            for (int i = 0; i < pruned.size(); i++) {
+                assertEquals(ranked.get(i).getValue(), pruned.get(i).getLogProbability(), 1e-9);
+                // Extensions tied with the least kept one may be kept in either order.
+                Double total = extensions.get(candidateKey(pruned.get(i).getPlaintexts()));
+                assertTrue(total != null && total >= least - 1e-9);
+                if (ranked.get(i).getValue() > least + 1e-9) {
+                    assertTrue(containsCandidate(pruned, ranked.get(i).getKey()));
+                }
+            }
+            previous = pruned;
+        }
+    }
+
+    /**
+     * Chooses the byte of plaintext 'stream' and every plaintext after it, putting each complete extension of the
+     * candidate with its log probability into 'extensions'.
+     */
+    private void extend(PlaintextCandidate candidate, String[] plaintexts, long[] contexts, int contextLength,
+                        int xor, int[] next, int stream, Map<String, Double> extensions) {
+        int k = next.length;
+        if (stream == k - 1) {
+            next[stream] = xor;
+            if (k > 2 && next[stream] != 13 && (next[stream] < 32 || next[stream] > 126)) {
+                return;
+            }
+            double total = 0;
+            String[] extended = new String[k];
+            for (int s = 0; s < k; s++) {
+                total += candidate.getProbabilities()[s] + store.logProbability(contexts[s], contextLength, next[s]);
+                extended[s] = plaintexts[s] + (char) next[s];
+            }
+            extensions.put(candidateKey(extended), total);
+            return;
+        }
+        for (int c : printable()) {
+            next[stream] = c;
+            extend(candidate, plaintexts, contexts, contextLength, xor ^ c, next, stream + 1, extensions);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsPlaintextsLongerThanTheCorpus() {
+        BeamSearch.getPlaintextBytes(10, 2, Corpus.wrap(new byte[10]), new Random(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMoreStreamsThanTheOrderFits() {
+        new BeamSearch().beamSearch(store, N, 10, xorOfThreePlaintexts, BeamSearch.MAX_K + 1);
+    }
+
+    private static int[] printable() {
+        int[] printable = new int[96];
+        printable[0] = 13;
+        for (int i = 1; i < printable.length; i++) {
+            printable[i] = 31 + i;
+        }
+        return printable;
+    }
+
+    /**
+     * @return : A key identifying a candidate whichever order its plaintexts are in.
+     */
+    private static String candidateKey(String[] plaintexts) {
+        String[] sorted = plaintexts.clone();
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+
+    private static boolean containsCandidate(List<PlaintextCandidate> candidates, String key) {
+        for (PlaintextCandidate candidate : candidates) {
+            if (candidateKey(candidate.getPlaintexts()).equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testStreamCommitsWhatTheSearchChooses() {
+        BeamSearch beam = new BeamSearch();
+        ArrayList<PlaintextCandidate> whole = beam.beamSearch(store, N, 300, xorOfPlaintexts, 2);
+
+        BeamStream stream = beam.stream(store, N, 300, 2, 1000);
+        byte[][] committed = new byte[2][0];
+        for (int offset = 0; offset < xorOfPlaintexts.length; offset += 7) {
+            byte[][] bytes = stream.feed(xorOfPlaintexts, offset, Math.min(7, xorOfPlaintexts.length - offset));
+            for (int s = 0; s < 2; s++) {
+                byte[] joined = Arrays.copyOf(committed[s], committed[s].length + bytes[s].length);
+                System.arraycopy(bytes[s], 0, joined, committed[s].length, bytes[s].length);
+                committed[s] = joined;
+            }
+        }
+        assertEquals(xorOfPlaintexts.length, stream.getPosition());
+        assertEquals(committed[0].length, stream.getCommitted());
+        assertTrue(stream.getCommitted() > 0);
+
+        // The committed bytes followed by the rest of the most probable candidate are the most probable plaintexts.
+        byte[][] best = whole.get(0).getPlaintextBytes();
+        byte[][] rest = stream.getCandidates().get(0).getPlaintextBytes();
+        for (int s = 0; s < 2; s++) {
+            byte[] joined = Arrays.copyOf(committed[s], committed[s].length + rest[s].length);
+            System.arraycopy(rest[s], 0, joined, committed[s].length, rest[s].length);
+            assertArrayEquals(best[s], joined);
+        }
+        assertEquals(whole.get(0).getLogProbability(), stream.getCandidates().get(0).getLogProbability(), 1e-9);
+
+        // A short lag keeps at most that many positions uncommitted.
+        BeamStream cut = beam.stream(store, N, 300, 2, 4);
+        for (int offset = 0; offset < xorOfPlaintexts.length; offset++) {
+            cut.feed(xorOfPlaintexts, offset, 1);
+            assertTrue(cut.getPosition() - cut.getCommitted() <= 4);
+        }
+    }
+
+    @Test
+    public void testPairPruningMatchesBruteForce() {
+        byte[] xor = Arrays.copyOf(xorOfPlaintexts, 8);
+        for (int threads : new int[]{1, 4}) {
+            try (BeamSearch beam = new BeamSearch()) {
+                beam.setThreads(threads);
+                for (int pruneNumber : new int[]{1, 10, 100, 500}) {
+                    assertMatchesBruteForce(beam, xor, 2, pruneNumber);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBeamWidthFollowsTheMargin() {
+        BeamSearch beam = new BeamSearch();
+        ArrayList<PlaintextCandidate> fixed = beam.beamSearch(store, N, 300, xorOfPlaintexts, 2);
+
+        // An infinite margin with equal bounds is the fixed width.
+        BeamWidth same = new BeamWidth(Double.POSITIVE_INFINITY, 300, 300);
+        ArrayList<PlaintextCandidate> unchanged = beam.beamSearch(store, N, same, xorOfPlaintexts, 2);
+        assertEquals(fixed.size(), unchanged.size());
+        for (int i = 0; i < fixed.size(); i++) {
+            assertArrayEquals(fixed.get(i).getPlaintextBytes()[0], unchanged.get(i).getPlaintextBytes()[0]);
+            assertEquals(fixed.get(i).getLogProbability(), unchanged.get(i).getLogProbability(), 0);
+        }
+
+        BeamWidth adaptive = new BeamWidth(8, 10, 300);
+        ArrayList<PlaintextCandidate> candidates = beam.beamSearch(store, N, adaptive, xorOfPlaintexts, 2);
+        int[] widths = adaptive.getWidths();
+        assertEquals(xorOfPlaintexts.length, widths.length);
+        assertEquals(widths[widths.length - 1], candidates.size());
+        for (int width : widths) {
+            assertTrue(width <= 300);
+        }
+        assertTrue(adaptive.getMeanWidth() < same.getMeanWidth());
+        assertTrue(adaptive.getScored() < same.getScored());
+
+        // A budget keeps the search near it, though never below the smallest width.
+        BeamWidth budgeted = new BeamWidth(Double.POSITIVE_INFINITY, 1, 300);
+        budgeted.setBudget(same.getScored() / 4);
+        beam.beamSearch(store, N, budgeted, xorOfPlaintexts, 2);
+        assertTrue(budgeted.getScored() < same.getScored() / 2);
+    }
+
+    @Test
+    public void testSegmentedRecoveryStitchesWindows() {
+        BeamSearch beam = new BeamSearch();
+        PlaintextCandidate whole = beam.beamSearch(store, N, 300, xorOfPlaintexts, 2).get(0);
+
+        // A single window is the whole search.
+        SegmentedRecovery single = new SegmentedRecovery(store, N, 300, xorOfPlaintexts.length, 8);
+        PlaintextCandidate same = single.recover(xorOfPlaintexts);
+        assertArrayEquals(whole.getPlaintextBytes()[0], same.getPlaintextBytes()[0]);
+        assertArrayEquals(whole.getPlaintextBytes()[1], same.getPlaintextBytes()[1]);
+        assertEquals(0, single.getBreaks());
+
+        SegmentedRecovery serial = new SegmentedRecovery(store, N, 300, 16, 6);
+        PlaintextCandidate stitched = serial.recover(xorOfPlaintexts);
+        SegmentedRecovery parallel = new SegmentedRecovery(store, N, 300, 16, 6);
+        parallel.setThreads(4);
+        PlaintextCandidate stitchedInParallel = parallel.recover(xorOfPlaintexts);
+
+        byte[][] bytes = stitched.getPlaintextBytes();
+        assertEquals(xorOfPlaintexts.length, bytes[0].length);
+        for (int i = 0; i < xorOfPlaintexts.length; i++) {
+            assertEquals(xorOfPlaintexts[i], (byte) (bytes[0][i] ^ bytes[1][i]));
+        }
+        assertArrayEquals(bytes[0], stitchedInParallel.getPlaintextBytes()[0]);
+        assertArrayEquals(bytes[1], stitchedInParallel.getPlaintextBytes()[1]);
+        assertEquals(serial.getBreaks(), parallel.getBreaks());
+    }
+
+    @Test
+    public void testStitchingFollowsSwappedWindows() {
+        // Two windows of 8 positions over 12, sharing positions 4 to 7, which fit on positions 6 and 7.
+        SegmentedRecovery recovery = new SegmentedRecovery(store, N, 10, 8, 4);
+        ArrayList<PlaintextCandidate> first = new ArrayList<>();
+        first.add(candidate("abcdefgh", "ABCDEFGH", -1, -2));
+        ArrayList<PlaintextCandidate> second = new ArrayList<>();
+        // The most probable candidate fits neither way round, and the next holds the plaintexts the other way round.
+        second.add(candidate("abcdxxxx", "ABCDyyyy", -1, -1));
+        second.add(candidate("EFGHIJKL", "efghijkl", -3, -4));
+
+        PlaintextCandidate stitched = recovery.stitch(new ArrayList<>(Arrays.asList(first, second)), 12);
+        assertEquals("abcdefghijkl", stitched.getPlaintexts()[0]);
+        assertEquals("ABCDEFGHIJKL", stitched.getPlaintexts()[1]);
+        assertArrayEquals(new double[]{-1 - 4, -2 - 3}, stitched.getProbabilities(), 0);
+        assertEquals(0, recovery.getBreaks());
+    }
+
+    @Test
+    public void testStitchingRestartsWhereNothingFits() {
+        SegmentedRecovery recovery = new SegmentedRecovery(store, N, 10, 8, 4);
+        ArrayList<PlaintextCandidate> first = new ArrayList<>();
+        first.add(candidate("abcdefgh", "ABCDEFGH", -1, -2));
+        ArrayList<PlaintextCandidate> second = new ArrayList<>();
+        // Position 7 fits neither way round, but position 6 agrees with the plaintexts the other way round.
+        second.add(candidate("EFGxIJKL", "efgyijkl", -3, -4));
+
+        PlaintextCandidate stitched = recovery.stitch(new ArrayList<>(Arrays.asList(first, second)), 12);
+        assertEquals(1, recovery.getBreaks());
+        assertEquals("abcdefgyijkl", stitched.getPlaintexts()[0]);
+        assertEquals("ABCDEFGxIJKL", stitched.getPlaintexts()[1]);
+
+        // A single window has nothing to stitch.
+        recovery.stitch(new ArrayList<>(Arrays.asList(first)), 8);
+        assertEquals(0, recovery.getBreaks());
+    }
+
+    @Test
+    public void testStitchingReportsAWindowWithoutCandidates() {
+        // A window whose search found no candidates at all, as an unrecoverable byte would leave it.
+        SegmentedRecovery recovery = new SegmentedRecovery(store, N, 10, 8, 4);
+        ArrayList<PlaintextCandidate> first = new ArrayList<>();
+        first.add(candidate("abcdefgh", "ABCDEFGH", -1, -2));
+        try {
+            recovery.stitch(new ArrayList<>(Arrays.asList(first, new ArrayList<PlaintextCandidate>())), 12);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Window 1 (positions 4 to 12) has no candidates"));
+        }
+    }
+
+    private static PlaintextCandidate candidate(String one, String two, double probOne, double probTwo) {
+        return new PlaintextCandidate(new byte[][]{one.getBytes(StandardCharsets.ISO_8859_1),
+                two.getBytes(StandardCharsets.ISO_8859_1)}, new double[]{probOne, probTwo});
+    }
+
+    @Test
+    public void testJointRecoverySharesOneKeystream() {
+        // The laplace store gives so little weight to the unseen n-grams of garbled text that it cannot tell them
+        // from English, so the plaintexts are recovered with Kneser-Ney.
+        ArrayList<PlaintextCandidate> serial;
+        ArrayList<PlaintextCandidate> parallel;
+        try (BatchRecovery batch = new BatchRecovery(new KneserNeyModel(store), 1 << 12)) {
+            serial = batch.recover(ciphertexts, 100);
+            batch.setThreads(4);
+            parallel = batch.recover(ciphertexts, 100);
+            assertTrue(batch.getCache().size() > 0);
+        }
+
+        assertEquals(serial.size(), parallel.size());
+        for (int i = 0; i < serial.size(); i++) {
+            assertEquals(serial.get(i).toString(), parallel.get(i).toString());
+
+            // Every plaintext has the length of its ciphertext, and all of them give the same keystream.
+            byte[] keystream = BatchRecovery.keystream(serial.get(i), ciphertexts);
+            String[] plaintexts = serial.get(i).getPlaintexts();
+            for (int c = 0; c < ciphertexts.length; c++) {
+                assertEquals(ciphertexts[c].length, plaintexts[c].length());
+                for (int position = 0; position < ciphertexts[c].length; position++) {
+                    assertEquals(keystream[position], (byte) (plaintexts[c].charAt(position) ^ ciphertexts[c][position]));
+                }
+            }
+        }
+
+        // The plaintexts that were encrypted are recovered at every position at least two ciphertexts share, but
+        // the first, which has no context to choose its keystream byte by. Beyond the shorter ciphertexts the
+        // keystream is only constrained by the longest, so its plaintext there is whatever the model likes best.
+        int shared = ciphertexts[2].length;
+        boolean recovered = false;
+        for (int i = 0; i < 10 && !recovered; i++) {
+            String[] plaintexts = serial.get(i).getPlaintexts();
+            recovered = plaintexts[0].substring(1, shared).equals(sharedPlaintexts[0].substring(1, shared)) &&
+                    plaintexts[1].substring(1).equals(sharedPlaintexts[1].substring(1)) &&
+                    plaintexts[2].substring(1).equals(sharedPlaintexts[2].substring(1));
+        }
+        assertTrue(Arrays.toString(serial.get(0).getPlaintexts()), recovered);
+    }
+
+}
@@ -0,0 +1,84 @@
+package beamSearchTests;
+
+import beamSearch.Evaluation;
+import beamSearch.PlaintextCandidate;
+import languageModel.Corpus;
+import languageModel.NGramStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestEvaluation {
+
+    private static final String TEXT = "the cat sat on the mat with the hat and the rat ran to the bat";
+
+    private NGramStore store;
+    private Corpus corpus;
+
+    @Before
+    public void setUp() {
+        store = new NGramStore(3);
+        store.addNGrams(TEXT);
+        store.bakeLaplace();
+        corpus = Corpus.wrap(TEXT.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testTrialsRepeatWithTheSeed() throws Exception {
+        int[] ns = {2, 3};
+        int[] pruneNumbers = {10, 50};
+        int[] lengths = {8};
+        int[] ks = {2, 3};
+        Evaluation serial = new Evaluation(store, corpus, 7);
+        List<Evaluation.Trial> one = serial.run(ns, pruneNumbers, lengths, ks, 5);
+        Evaluation parallel = new Evaluation(store, corpus, 7);
+        parallel.setThreads(4);
+        List<Evaluation.Trial> two = parallel.run(ns, pruneNumbers, lengths, ks, 5);
+
+        assertEquals(2 * 2 * 2 * 5, one.size());
+        for (int i = 0; i < one.size(); i++) {
+            assertEquals(one.get(i).getSeed(), two.get(i).getSeed());
+            assertEquals(one.get(i).getRank(), two.get(i).getRank());
+            assertEquals(one.get(i).getByteAccuracy(), two.get(i).getByteAccuracy(), 0);
+            assertEquals(one.get(i).isRecovered(), one.get(i).getRank() == 1);
+        }
+        // Every n and P is measured on the same plaintexts.
+        assertEquals(one.get(0).getSeed(), one.get(5).getSeed());
+
+        File csv = File.createTempFile("evaluation", ".csv");
+        csv.deleteOnExit();
+        Evaluation.writeCsv(one, csv);
+        List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+        assertEquals(Evaluation.HEADER, lines.get(0));
+        assertEquals(one.size() + 1, lines.size());
+        assertEquals(Evaluation.HEADER.split(",").length, lines.get(1).split(",").length);
+        assertEquals(8 + 1, Evaluation.summary(one).split("\n").length);
+    }
+
+    @Test
+    public void testAccuracyIgnoresTheOrderOfThePlaintexts() {
+        byte[][] plaintexts = {bytes("the cat"), bytes("a hat!!")};
+        PlaintextCandidate swapped = new PlaintextCandidate(new byte[][]{bytes("a h cXX"), bytes("theatYY")},
+                new double[2]);
+        // Swapped after the third position, and wrong at the last two.
+        assertEquals(5 / 7.0, Evaluation.byteAccuracy(plaintexts, swapped), 1e-12);
+
+        PlaintextCandidate right = new PlaintextCandidate(new byte[][]{plaintexts[1], plaintexts[0]}, new double[2]);
+        List<PlaintextCandidate> candidates = new ArrayList<>(Arrays.asList(swapped, right));
+        assertEquals(2, Evaluation.rank(plaintexts, candidates));
+        assertEquals(0, Evaluation.rank(plaintexts, candidates.subList(0, 1)));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+}
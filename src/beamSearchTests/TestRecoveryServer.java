@@ -0,0 +1,151 @@
+package beamSearchTests;
+
+import beamSearch.BeamSearch;
+import beamSearch.PlaintextCandidate;
+import beamSearch.RecoveryServer;
+import languageModel.NGramStore;
+import languageModel.Scorer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRecoveryServer {
+
+    private static final String TEXT = "the cat sat on the mat with the hat and the rat ran to the bat";
+
+    private NGramStore store;
+    private RecoveryServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new NGramStore(3);
+        store.addNGrams(TEXT);
+        store.bakeLaplace();
+        Map<String, Scorer> models = new LinkedHashMap<>();
+        models.put("cats", store);
+        server = new RecoveryServer(models, 2, 1);
+        port = server.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private HttpURLConnection post(String query, String body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/recover?" + query)
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.US_ASCII));
+        }
+        return connection;
+    }
+
+    @Test
+    public void testStreamsOneLinePerJob() throws Exception {
+        byte[] xor = BeamSearch.getXOROfPlaintext(new String[]{"the mat", "the rat"}, 2);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : xor) {
+            hex.append(String.format("%02x", b));
+        }
+        // More jobs than threads and queue, so the request has to wait for jobs to finish.
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            body.append(hex).append('\n');
+        }
+        body.append("0g\n");
+
+        HttpURLConnection connection = post("P=50&top=1", body.toString());
+        assertEquals(200, connection.getResponseCode());
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        assertEquals(6, lines.size());
+        Collections.sort(lines);
+
+        PlaintextCandidate best = new BeamSearch().beamSearch(store, 3, 50, xor, 2).get(0);
+        String plaintexts = "\"plaintexts\": [\"" + best.getPlaintexts()[0] + "\", \"" + best.getPlaintexts()[1] +
+                "\"]";
+        for (int job = 0; job < 5; job++) {
+            assertTrue(lines.get(job), lines.get(job).startsWith("{\"job\": " + job + ", "));
+            assertTrue(lines.get(job), lines.get(job).contains(plaintexts));
+        }
+        assertEquals("{\"job\": 5, \"error\": \"A XOR must be hex but had 0g\"}", lines.get(5));
+    }
+
+    @Test
+    public void testRejectsUnknownModel() throws Exception {
+        assertEquals(400, post("model=dogs", "00").getResponseCode());
+        assertEquals(400, post("n=4", "00").getResponseCode());
+    }
+
+    @Test
+    public void testRejectsPruneNumberAboveTheLimit() throws Exception {
+        server.setMaxPruneNumber(50);
+        HttpURLConnection refused = post("P=51", "00");
+        assertEquals(400, refused.getResponseCode());
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(refused.getErrorStream(),
+                StandardCharsets.UTF_8))) {
+            assertEquals("P must be at most 50 on this server but was 51", in.readLine());
+        }
+
+        server.setMaxK(3);
+        assertEquals(400, post("k=4", "00").getResponseCode());
+
+        // A XOR longer than the limit fails as its own job, and the other jobs of the request still run.
+        server.setMaxLength(4);
+        HttpURLConnection tooLong = post("P=2", "0000000000\n00\n");
+        assertEquals(200, tooLong.getResponseCode());
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(tooLong.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        Collections.sort(lines);
+        assertEquals("{\"job\": 0, \"error\": \"A XOR must be at most 4 bytes on this server but was 5\"}",
+                lines.get(0));
+        assertTrue(lines.get(1), lines.get(1).startsWith("{\"job\": 1, \"millis\""));
+        server.setMaxLength(4096);
+
+        // Within the limit the request is served, with no more candidates than P however many top asks for.
+        byte[] xor = BeamSearch.getXOROfPlaintext(new String[]{"the mat", "the rat"}, 2);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : xor) {
+            hex.append(String.format("%02x", b));
+        }
+        HttpURLConnection served = post("P=2&top=5", hex.toString());
+        assertEquals(200, served.getResponseCode());
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(served.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line = in.readLine();
+            assertEquals(line, 2, line.split("logProbability").length - 1);
+        }
+    }
+
+}
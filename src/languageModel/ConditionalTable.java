@@ -0,0 +1,140 @@
+package languageModel;
+
+import java.util.Arrays;
+
+/**
+ * A class that holds the conditional log probability of every 7-bit Ascii character following every context
+ * seen in the corpus, baked once from an NGramStore into a dense table of rows. A context is mapped to its row
+ * with one hash lookup, after which scoring any next character is a single array read. The rows hold the store's
+ * log probabilities as doubles, so the table scores every n-gram exactly as the store does.
+ * Contexts that were never seen share one row per context length, since every n-gram following them is unseen.
+ *
+ * @author Shaquille Momoh
+ */
+public class ConditionalTable implements Scorer {
+
+    private final NGramStore store;
+    private final int n;
+
+    // The rows of log probabilities, ROW_WIDTH values per row.
+    private final double[] rows;
+
+    // For each context length, the row of each slot of the store's table of that length.
+    private final int[][] rowOfSlot;
+
+    // For each context length, the row shared by all unseen contexts of that length.
+    private final int[] unseenRow;
+
+    // The largest value in the rows.
+    private double maxInRows = Double.NEGATIVE_INFINITY;
+
+    /**
+     * A constructor that bakes the conditional log probabilities of the given store.
+     *
+     * @param store : The store holding the n-grams and their log probabilities.
+     */
+    public ConditionalTable(NGramStore store) {
+        this.store = store;
+        this.n = store.getN();
+        this.rowOfSlot = new int[n][];
+        this.unseenRow = new int[n];
+
+        // Row 0 is the empty context, followed by the seen and then the unseen contexts of each length.
+        long rowCount = 1;
+        for (int length = 1; length < n; length++) {
+            rowCount += store.getTable(length).size() + 1;
+        }
+        if (rowCount * ROW_WIDTH > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many contexts (" + rowCount + ") for a conditional table");
+        }
+        this.rows = new double[(int) rowCount * ROW_WIDTH];
+
+        double[] row = new double[ROW_WIDTH];
+        int next = 0;
+        store.scoreRow(0, 0, row);
+        setRow(next++, row);
+
+        for (int length = 1; length < n; length++) {
+            NGramTable contexts = store.getTable(length);
+            int[] rowsOfLength = new int[contexts.capacity()];
+            Arrays.fill(rowsOfLength, -1);
+
+            for (int slot = 0; slot < contexts.capacity(); slot++) {
+                if (contexts.isOccupied(slot)) {
+                    store.scoreRow(contexts.keyAt(slot), length, row);
+                    rowsOfLength[slot] = next;
+                    setRow(next++, row);
+                }
+            }
+
+            // Any context that was never seen is scored like the first unused packed key of its length.
+            store.scoreRow(unseenContext(contexts, length), length, row);
+            unseenRow[length] = next;
+            setRow(next++, row);
+            rowOfSlot[length] = rowsOfLength;
+        }
+    }
+
+    private static long unseenContext(NGramTable contexts, int length) {
+        long mask = NGramStore.mask(length);
+        long key = 0;
+        while (contexts.indexOf(key & mask) >= 0) {
+            key++;
+        }
+        return key & mask;
+    }
+
+    private void setRow(int row, double[] values) {
+        System.arraycopy(values, 0, rows, row * ROW_WIDTH, ROW_WIDTH);
+        for (double value : values) {
+            maxInRows = Math.max(maxInRows, value);
+        }
+    }
+
+    /**
+     * A method that returns the offset in the table of the row of the given context.
+     *
+     * @param context : The packed context.
+     * @param length  : The length of the context.
+     * @return : The offset of the first value of the row.
+     */
+    public int rowOffset(long context, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int slot = store.getTable(length).indexOf(context);
+        int row = slot < 0 ? unseenRow[length] : rowOfSlot[length][slot];
+        return row * ROW_WIDTH;
+    }
+
+    @Override
+    public double logProbability(long context, int length, int next) {
+        if (next >= ROW_WIDTH) {
+            return store.logProbability(context, length, next);
+        }
+        return rows[rowOffset(context, length) + next];
+    }
+
+    @Override
+    public void scoreRow(long context, int length, double[] row) {
+        System.arraycopy(rows, rowOffset(context, length), row, 0, ROW_WIDTH);
+    }
+
+    /**
+     * @return : The most log probability in the rows, or given by the store to a character beyond them.
+     */
+    @Override
+    public double maxLogProbability() {
+        return Math.max(maxInRows, store.maxLogProbability());
+    }
+
+    @Override
+    public int getN() {
+        return n;
+    }
+
+    public double[] getRows() {
+        return rows;
+    }
+
+}
@@ -0,0 +1,188 @@
+package languageModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * A class that gives a read-only view of a corpus as bytes, without decoding it into a String.
+ * Each file is memory-mapped in segments of at most 1 GB, so corpora larger than 2 GB can be read, and the
+ * files of a directory are seen as one corpus in the order they are listed.
+ *
+ * @author Shaquille Momoh
+ */
+public class Corpus {
+
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private static final Metrics.Timer LOAD_TIME = Metrics.DEFAULT.timer("corpus_load_seconds",
+            "Time taken to map a corpus.");
+    private static final Metrics.Counter BYTES = Metrics.DEFAULT.counter("corpus_bytes_total",
+            "Bytes of the corpora mapped.");
+
+    private final ByteBuffer[] segments;
+
+    // The position in the corpus of the first byte of each segment, with the length of the corpus at the end.
+    private final long[] starts;
+
+    private Corpus(ByteBuffer[] segments) {
+        this.segments = segments;
+        this.starts = new long[segments.length + 1];
+        for (int i = 0; i < segments.length; i++) {
+            starts[i + 1] = starts[i] + segments[i].capacity();
+        }
+    }
+
+    /**
+     * A method that memory-maps a corpus file, or every file of a corpus directory.
+     *
+     * @param f : The file or directory to map.
+     * @return : The mapped corpus.
+     * @throws IOException
+     */
+    public static Corpus map(File f) throws IOException {
+        return map(f, SEGMENT_SIZE);
+    }
+
+    /**
+     * A method that memory-maps a corpus file, or every file of a corpus directory, in segments of at most the
+     * given size. Smaller segments let the tests cross segment boundaries without gigabytes of corpus.
+     *
+     * @param f           : The file or directory to map.
+     * @param segmentSize : The most bytes mapped in one segment.
+     * @return : The mapped corpus.
+     * @throws IOException
+     * @throws IllegalArgumentException : If the corpus is empty.
+     */
+    public static Corpus map(File f, int segmentSize) throws IOException {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("The segment size must be at least 1 but was " + segmentSize);
+        }
+        long startTime = System.nanoTime();
+        File[] files = f.isDirectory() ? f.listFiles() : new File[]{f};
+        ArrayList<ByteBuffer> segments = new ArrayList<>();
+
+        for (File file : files) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                for (long start = 0; start < size; start += segmentSize) {
+                    long length = Math.min(segmentSize, size - start);
+                    segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("The corpus " + f + " is empty");
+        }
+        Corpus corpus = new Corpus(segments.toArray(new ByteBuffer[0]));
+        LOAD_TIME.since(startTime);
+        BYTES.add(corpus.length());
+        return corpus;
+    }
+
+    /**
+     * A method that creates a corpus viewing the given bytes.
+     *
+     * @param bytes : The bytes of the corpus.
+     * @return : The corpus.
+     */
+    public static Corpus wrap(byte[] bytes) {
+        return new Corpus(new ByteBuffer[]{ByteBuffer.wrap(bytes)});
+    }
+
+    /**
+     * @return : The number of bytes in the corpus.
+     */
+    public long length() {
+        return starts[segments.length];
+    }
+
+    private int segmentOf(long position) {
+        int lo = 0;
+        int hi = segments.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @param position : A position in the corpus.
+     * @return : The position after the last byte of the segment holding it, so that 'slice' views the bytes from
+     * 'position' up to there without copying them.
+     */
+    public long segmentEnd(long position) {
+        return starts[segmentOf(position) + 1];
+    }
+
+    /**
+     * @param position : The position of the byte in the corpus.
+     * @return : The byte at the given position.
+     */
+    public byte get(long position) {
+        int segment = segmentOf(position);
+        return segments[segment].get((int) (position - starts[segment]));
+    }
+
+    /**
+     * A method that copies the bytes of the corpus from 'start' into the given array.
+     *
+     * @param start  : The position of the first byte to copy.
+     * @param dst    : The array to copy into.
+     * @param offset : The offset in 'dst' of the first byte.
+     * @param length : The number of bytes to copy.
+     */
+    public void get(long start, byte[] dst, int offset, int length) {
+        int segment = segmentOf(start);
+        while (length > 0) {
+            ByteBuffer buffer = segments[segment].duplicate();
+            int from = (int) (start - starts[segment]);
+            int count = Math.min(length, buffer.capacity() - from);
+            buffer.position(from);
+            buffer.get(dst, offset, count);
+            start += count;
+            offset += count;
+            length -= count;
+            segment++;
+        }
+    }
+
+    /**
+     * A method that returns a view of the bytes from 'start' (inclusive) to 'end' (exclusive), indexed from 0.
+     * When the range lies in a single segment the mapped bytes are viewed directly; otherwise they are copied, so
+     * ranges crossing segments should be small (see 'segmentEnd').
+     *
+     * @param start : The position of the first byte.
+     * @param end   : The position after the last byte.
+     * @return : A buffer holding the range.
+     */
+    public ByteBuffer slice(long start, long end) {
+        if (start == end) {
+            return ByteBuffer.allocate(0);
+        }
+        int segment = segmentOf(start);
+        if (end <= starts[segment + 1]) {
+            ByteBuffer buffer = segments[segment].duplicate();
+            buffer.position((int) (start - starts[segment]));
+            buffer.limit((int) (end - starts[segment]));
+            return buffer.slice();
+        }
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot copy the " + (end - start) + " bytes from " + start +
+                    " into one buffer");
+        }
+        byte[] bytes = new byte[(int) (end - start)];
+        get(start, bytes, 0, bytes.length);
+        return ByteBuffer.wrap(bytes);
+    }
+
+}
@@ -0,0 +1,245 @@
+package languageModel;
+
+/**
+ * A class that scores candidates with an interpolated Kneser-Ney language model built from the counts of an
+ * NGramStore. Everything 'NGramModel.knSmoothing' recomputes on every call by scanning the maps is computed once
+ * at build time, with one pass over each table from the longest n-grams down:
+ *   - the continuation count N1+(.w) of every n-gram w shorter than n (the number of different characters seen
+ *     before it),
+ *   - the number of different characters N1+(h.) seen after every context h, and the normaliser of h (the sum of
+ *     the counts of its extensions, which are continuation counts below the highest order),
+ *   - the discount D = n1 / (n1 + 2 * n2) of every order, as 'NGramModel.getD' calculates it.
+ * A second pass from the shortest n-grams up then bakes the log probability of every stored n-gram, and the log
+ * backoff weight D * N1+(h.) / normaliser of every context, into arrays parallel to the slots of the store's
+ * tables. Scoring an unseen n-gram then only adds backoff weights until a stored suffix is found.
+ * The unigram distribution is interpolated with a uniform distribution over all 256 bytes, so no character has
+ * a probability of zero.
+ *
+ * @author Shaquille Momoh
+ */
+public class KneserNeyModel implements Scorer {
+
+    private static final int BYTE_VALUES = 256;
+
+    private final NGramStore store;
+    private final int n;
+
+    // The discount of each order, indexed by the n-gram length.
+    private final double[] discounts;
+
+    // For each n-gram length, the log probability of the last character of the n-gram in each slot of the store's
+    // table, given the characters before it.
+    private final double[][] logProbs;
+
+    // For each context length, the log backoff weight of the context in each slot of the store's table.
+    private final double[][] logBackoffs;
+
+    // The log probability of a character that was never seen, given the empty context.
+    private final double unseenUnigramLogProb;
+
+    /**
+     * A constructor that builds the model from the counts of a store.
+     * The store must not be added to afterwards, since the model refers to the slots of its tables.
+     *
+     * @param store : The store holding the n-grams of the corpus with their counts.
+     */
+    public KneserNeyModel(NGramStore store) {
+        this.store = store;
+        this.n = store.getN();
+        this.discounts = new double[n + 1];
+        this.logProbs = new double[n + 1][];
+        this.logBackoffs = new double[n][];
+
+        // continuations[k][slot]: N1+(.w) of the k-gram w. normalisers[k][slot] and followers[k][slot]: the sum of
+        // the counts of the extensions of the k-gram h, and N1+(h.). Index 0 holds the empty context.
+        int[][] continuations = new int[n][];
+        long[][] normalisers = new long[n][];
+        int[][] followers = new int[n][];
+        normalisers[0] = new long[1];
+        followers[0] = new int[1];
+        for (int order = 1; order < n; order++) {
+            int capacity = store.getTable(order).capacity();
+            continuations[order] = new int[capacity];
+            normalisers[order] = new long[capacity];
+            followers[order] = new int[capacity];
+        }
+
+        for (int order = n; order >= 1; order--) {
+            NGramTable table = store.getTable(order);
+            NGramTable lower = order > 1 ? store.getTable(order - 1) : null;
+            long n1 = 0;
+            long n2 = 0;
+
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (!table.isOccupied(slot)) {
+                    continue;
+                }
+                long key = table.keyAt(slot);
+                int count = countOf(table, continuations, order, slot);
+                if (count == 1) {
+                    n1++;
+                } else if (count == 2) {
+                    n2++;
+                }
+
+                if (order > 1) {
+                    continuations[order - 1][lower.indexOf(key & NGramStore.mask(order - 1))]++;
+                }
+                if (count > 0) {
+                    int context = order > 1 ? lower.indexOf(key >>> 8) : 0;
+                    normalisers[order - 1][context] += count;
+                    followers[order - 1][context]++;
+                }
+            }
+
+            discounts[order] = discount(n1, n2);
+        }
+
+        long uniqueUnigrams = followers[0][0];
+        long unigramNormaliser = normalisers[0][0];
+        this.unseenUnigramLogProb = unigramNormaliser == 0 ? Math.log(1.0 / BYTE_VALUES)
+                : Math.log(discounts[1] * uniqueUnigrams / unigramNormaliser / BYTE_VALUES);
+
+        for (int order = 1; order <= n; order++) {
+            NGramTable table = store.getTable(order);
+            double discount = discounts[order];
+            double[] orderLogProbs = new double[table.capacity()];
+
+            // The backoff weights of the contexts of this order's n-grams.
+            double[] contextBackoffs = new double[order == 1 ? 1 : store.getTable(order - 1).capacity()];
+            long[] orderNormalisers = normalisers[order - 1];
+            int[] orderFollowers = followers[order - 1];
+            for (int context = 0; context < contextBackoffs.length; context++) {
+                // A context followed by nothing backs off entirely to the shorter context.
+                contextBackoffs[context] = orderNormalisers[context] == 0 ? 0.0
+                        : Math.log(discount * orderFollowers[context] / orderNormalisers[context]);
+            }
+            logBackoffs[order - 1] = contextBackoffs;
+
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (!table.isOccupied(slot)) {
+                    continue;
+                }
+                long key = table.keyAt(slot);
+                int context = order > 1 ? store.getTable(order - 1).indexOf(key >>> 8) : 0;
+                long normaliser = orderNormalisers[context];
+
+                // Every suffix of a stored n-gram is stored, so the lower order probability has been baked already.
+                double lowerLogProb = order == 1 ? Math.log(1.0 / BYTE_VALUES)
+                        : logProbs[order - 1][store.getTable(order - 1).indexOf(key & NGramStore.mask(order - 1))];
+
+                if (normaliser == 0) {
+                    orderLogProbs[slot] = lowerLogProb;
+                } else {
+                    double discounted = Math.max(countOf(table, continuations, order, slot) - discount, 0.0)
+                            / normaliser;
+                    orderLogProbs[slot] = Math.log(discounted + Math.exp(contextBackoffs[context] + lowerLogProb));
+                }
+            }
+            logProbs[order] = orderLogProbs;
+        }
+    }
+
+    /**
+     * @return : The count used for the n-gram in the given slot: its count in the corpus at the highest order,
+     * and its continuation count below it.
+     */
+    private int countOf(NGramTable table, int[][] continuations, int order, int slot) {
+        return order == n ? table.countAt(slot) : continuations[order][slot];
+    }
+
+    /**
+     * A method that calculates the discount of an order from the number of n-grams seen once and twice, as in
+     * 'NGramModel.getD'. Orders without any n-gram seen once or twice get a discount of 0.5.
+     */
+    private static double discount(long n1, long n2) {
+        if (n1 == 0) {
+            return 0.5;
+        }
+        return (double) n1 / (n1 + 2 * n2);
+    }
+
+    @Override
+    public double logProbability(long context, int length, int next) {
+        double backoff = 0.0;
+        for (int l = length; l >= 0; l--) {
+            long ctx = context & NGramStore.mask(l);
+            NGramTable table = store.getTable(l + 1);
+            int slot = table.indexOf((ctx << 8) | (next & 0xFF));
+            if (slot >= 0) {
+                return backoff + logProbs[l + 1][slot];
+            }
+            if (l > 0) {
+                int contextSlot = store.getTable(l).indexOf(ctx);
+                if (contextSlot >= 0) {
+                    backoff += logBackoffs[l][contextSlot];
+                }
+            }
+        }
+        return backoff + unseenUnigramLogProb;
+    }
+
+    /**
+     * A method that fills 'row' with the log probability of every 7-bit Ascii character following the given
+     * context. The contexts are looked up once for the whole row, from the longest to the shortest, and each
+     * character takes the probability of the longest stored n-gram ending with it.
+     *
+     * @param context : The packed context, holding the last 'length' characters.
+     * @param length  : The length of the context (at most n - 1).
+     * @param row     : The array to fill, of at least ROW_WIDTH elements.
+     */
+    @Override
+    public void scoreRow(long context, int length, double[] row) {
+        for (int next = 0; next < ROW_WIDTH; next++) {
+            row[next] = Double.NaN;
+        }
+        double backoff = 0.0;
+        for (int l = length; l >= 0; l--) {
+            long prefix = (context & NGramStore.mask(l)) << 8;
+            NGramTable table = store.getTable(l + 1);
+            double[] orderLogProbs = logProbs[l + 1];
+            for (int next = 0; next < ROW_WIDTH; next++) {
+                if (Double.isNaN(row[next])) {
+                    int slot = table.indexOf(prefix | next);
+                    if (slot >= 0) {
+                        row[next] = backoff + orderLogProbs[slot];
+                    }
+                }
+            }
+            if (l > 0) {
+                int contextSlot = store.getTable(l).indexOf(context & NGramStore.mask(l));
+                if (contextSlot >= 0) {
+                    backoff += logBackoffs[l][contextSlot];
+                }
+            }
+        }
+        for (int next = 0; next < ROW_WIDTH; next++) {
+            if (Double.isNaN(row[next])) {
+                row[next] = backoff + unseenUnigramLogProb;
+            }
+        }
+    }
+
+    /**
+     * @param order : The n-gram length.
+     * @return : The discount used for n-grams of the given length.
+     */
+    public double getDiscount(int order) {
+        return discounts[order];
+    }
+
+    /**
+     * @return : 0, since the model gives a true distribution over the next character, so no character following a
+     * context is more probable than 1.
+     */
+    @Override
+    public double maxLogProbability() {
+        return 0.0;
+    }
+
+    @Override
+    public int getN() {
+        return n;
+    }
+
+}
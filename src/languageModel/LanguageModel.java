@@ -9,10 +9,14 @@ public class LanguageModel {
     final static NGramModel model = new NGramModel();
     public static Split split = new Split();
 
+    private static final Metrics.Timer BUILD_TIME = Metrics.DEFAULT.timer("model_build_seconds",
+            "Time taken to build a language model from the n-gram counts.");
+
     /**
      * A method that creates a n-gram language model from a given array of Maps.
      * The array is a container for all n-grams for a given corpus, along with their
-     * frequencies.
+     * frequencies. Beam Search uses 'createModel(NGramStore, boolean)' instead, which writes the same
+     * probabilities into arrays beside the counts rather than into a second map.
      *
      * @param mapArr : An array of maps used as a container for all n-grams.
      * @return model : HashMap<String, Double> that is used to represent the language model.
@@ -40,4 +44,38 @@ public class LanguageModel {
         return languageModel;
     }
 
+    /**
+     * A method that creates the language model used to score candidates in Beam Search from a store of n-gram
+     * counts, calculating the laplace smoothed log probability of every n-gram in the store in one parallel pass
+     * over its tables.
+     * When 'conditional' is true the conditional log probability of every character following every context is
+     * baked into a dense table, so scoring a character is a single array read instead of two hash lookups.
+     *
+     * @param store       : The store holding the n-grams with their counts.
+     * @param conditional : Whether to bake a table of conditional log probabilities.
+     * @return : The language model.
+     */
+    public Scorer createModel(NGramStore store, boolean conditional) {
+        long start = System.nanoTime();
+        store.bakeLaplace();
+        Scorer scorer = conditional ? new ConditionalTable(store) : store;
+        BUILD_TIME.since(start);
+        return scorer;
+    }
+
+    /**
+     * A method that creates an interpolated Kneser-Ney language model, used to score candidates in Beam Search,
+     * from a store of n-gram counts. The continuation counts, discounts and normalisers are all calculated here,
+     * once, so scoring never scans the n-grams.
+     *
+     * @param store : The store holding the n-grams with their counts.
+     * @return : The language model.
+     */
+    public Scorer createKneserNeyModel(NGramStore store) {
+        long start = System.nanoTime();
+        Scorer scorer = new KneserNeyModel(store);
+        BUILD_TIME.since(start);
+        return scorer;
+    }
+
 }
@@ -0,0 +1,196 @@
+package languageModel;
+
+/**
+ * A class that scores candidates from a memory-mapped model file written by 'ModelFile.write'.
+ * The n-grams of each length are sorted, so an n-gram is found with a binary search, and all n-grams
+ * sharing a context are next to each other, so a whole row of next characters costs one search.
+ * It gives exactly the same log probabilities as the NGramStore the file was written from.
+ *
+ * @author Shaquille Momoh
+ */
+public class MappedModel implements Scorer {
+
+    private final int n;
+    private final int vocabSize;
+    private final long corpusLength;
+    private final MappedSection[] keys;
+    private final MappedSection[] counts;
+    private final MappedSection[] logProbs;
+    private final int[] sizes;
+    private final double[] unseenLogProbs;
+
+    // The most conditional log probability the model gives, found on first use.
+    private volatile double maxLogProb = Double.NaN;
+
+    /**
+     * A constructor that creates a model over mapped sections of a model file. Use 'ModelFile.open'.
+     */
+    MappedModel(int n, int vocabSize, long corpusLength, MappedSection[] keys,
+                MappedSection[] counts, MappedSection[] logProbs) {
+        this.n = n;
+        this.vocabSize = vocabSize;
+        this.corpusLength = corpusLength;
+        this.keys = keys;
+        this.counts = counts;
+        this.logProbs = logProbs;
+        this.sizes = new int[n];
+        this.unseenLogProbs = new double[n + 1];
+        for (int order = 1; order <= n; order++) {
+            sizes[order - 1] = keys[order - 1].size();
+            unseenLogProbs[order] = NGramStore.unseenLogProb(order);
+        }
+    }
+
+    /**
+     * A method that finds the first n-gram of the given length whose key is not less than 'key'.
+     *
+     * @param key    : The packed n-gram.
+     * @param length : The length of the n-gram.
+     * @return : The index of the first key not less than 'key', which is the number of keys if there is none.
+     */
+    private int lowerBound(long key, int length) {
+        MappedSection orderKeys = keys[length - 1];
+        int lo = 0;
+        int hi = sizes[length - 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (orderKeys.getLong(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * A method that finds the index of an n-gram.
+     *
+     * @param key    : The packed n-gram.
+     * @param length : The length of the n-gram.
+     * @return : The index of the n-gram, or -1 if it is not in the model.
+     */
+    public int indexOf(long key, int length) {
+        int index = lowerBound(key, length);
+        if (index < sizes[length - 1] && keys[length - 1].getLong(index) == key) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * A method that returns the log probability of a packed n-gram, falling back to the estimate
+     * given to unseen n-grams. The empty n-gram always has a log probability of 0.
+     *
+     * @param key    : The packed n-gram.
+     * @param length : The length of the n-gram.
+     * @return : The log probability of the n-gram.
+     */
+    public double logProbOf(long key, int length) {
+        if (length == 0) {
+            return 0.0;
+        }
+        int index = indexOf(key, length);
+        return index < 0 ? unseenLogProbs[length] : logProbs[length - 1].getDouble(index);
+    }
+
+    /**
+     * A method that returns the count of a packed n-gram.
+     *
+     * @param key    : The packed n-gram.
+     * @param length : The length of the n-gram.
+     * @return : The number of times the n-gram was seen in the corpus.
+     */
+    public int getCount(long key, int length) {
+        int index = indexOf(key, length);
+        return index < 0 ? 0 : counts[length - 1].getInt(index);
+    }
+
+    @Override
+    public double logProbability(long context, int length, int next) {
+        long key = (context << 8) | (next & 0xFF);
+        return logProbOf(key, length + 1) - logProbOf(context, length);
+    }
+
+    @Override
+    public void scoreRow(long context, int length, double[] row) {
+        double contextLogProb = logProbOf(context, length);
+        double unseen = unseenLogProbs[length + 1] - contextLogProb;
+        for (int next = 0; next < ROW_WIDTH; next++) {
+            row[next] = unseen;
+        }
+
+        // The n-grams extending the context by a 7-bit character are consecutive in the sorted keys.
+        long prefix = context << 8;
+        MappedSection orderKeys = keys[length];
+        MappedSection orderLogProbs = logProbs[length];
+        int size = sizes[length];
+        for (int index = lowerBound(prefix, length + 1); index < size; index++) {
+            long key = orderKeys.getLong(index);
+            if (key < prefix || key >= prefix + ROW_WIDTH) {
+                break;
+            }
+            row[(int) (key - prefix)] = orderLogProbs.getDouble(index) - contextLogProb;
+        }
+    }
+
+    /**
+     * A method that returns the most conditional log probability the model gives any character following any
+     * context, found on first use exactly as 'NGramStore.maxLogProbability' finds it. The n-grams sharing a
+     * context are next to each other, so each context is only looked up once.
+     *
+     * @return : The most log probability of any character following any context.
+     */
+    @Override
+    public double maxLogProbability() {
+        double max = maxLogProb;
+        if (Double.isNaN(max)) {
+            max = findMaxLogProbability();
+            maxLogProb = max;
+        }
+        return max;
+    }
+
+    private double findMaxLogProbability() {
+        double max = Double.NEGATIVE_INFINITY;
+        double leastContext = 0.0;
+        for (int length = 0; length < n; length++) {
+            max = Math.max(max, unseenLogProbs[length + 1] - leastContext);
+            if (length > 0) {
+                max = Math.max(max, unseenLogProbs[length + 1] - unseenLogProbs[length]);
+            }
+
+            MappedSection orderKeys = keys[length];
+            MappedSection orderLogProbs = logProbs[length];
+            double least = Double.POSITIVE_INFINITY;
+            long context = -1;
+            double contextLogProb = 0.0;
+            for (int index = 0; index < sizes[length]; index++) {
+                long key = orderKeys.getLong(index);
+                double logProb = orderLogProbs.getDouble(index);
+                if (context != key >>> 8) {
+                    context = key >>> 8;
+                    contextLogProb = logProbOf(context, length);
+                }
+                least = Math.min(least, logProb);
+                max = Math.max(max, logProb - contextLogProb);
+            }
+            leastContext = least;
+        }
+        return max;
+    }
+
+    @Override
+    public int getN() {
+        return n;
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    public long getCorpusLength() {
+        return corpusLength;
+    }
+
+}
@@ -0,0 +1,68 @@
+package languageModel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A class that gives a read-only view of one section of a model file, an array of longs, ints or doubles, as
+ * memory-mapped segments. A single ByteBuffer is indexed by an int, so an array of more than 2 GB, such as the
+ * keys of more than 268 million n-grams, cannot be mapped as one buffer. Every segment holds the same power of two
+ * number of elements, so an element is found with a shift and a mask.
+ *
+ * @author Shaquille Momoh
+ */
+final class MappedSection {
+
+    private final ByteBuffer[] segments;
+    private final int size;
+    private final int shift;
+    private final int mask;
+
+    private MappedSection(ByteBuffer[] segments, int size, int shift) {
+        this.segments = segments;
+        this.size = size;
+        this.shift = shift;
+        this.mask = (1 << shift) - 1;
+    }
+
+    /**
+     * A method that memory-maps a section of a file in segments.
+     *
+     * @param channel      : The channel of the file.
+     * @param offset       : The position in the file of the first element.
+     * @param size         : The number of elements.
+     * @param width        : The number of bytes of each element, 4 or 8.
+     * @param segmentShift : The base 2 logarithm of the number of elements in each segment.
+     * @return : The mapped section.
+     * @throws IOException
+     */
+    static MappedSection map(FileChannel channel, long offset, int size, int width, int segmentShift)
+            throws IOException {
+        long perSegment = 1L << segmentShift;
+        ByteBuffer[] segments = new ByteBuffer[(int) ((size + perSegment - 1) / perSegment)];
+        for (int i = 0; i < segments.length; i++) {
+            long elements = Math.min(perSegment, size - i * perSegment);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + i * perSegment * width,
+                    elements * width);
+        }
+        return new MappedSection(segments, size, segmentShift);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getLong(int index) {
+        return segments[index >>> shift].getLong((index & mask) << 3);
+    }
+
+    int getInt(int index) {
+        return segments[index >>> shift].getInt((index & mask) << 2);
+    }
+
+    double getDouble(int index) {
+        return segments[index >>> shift].getDouble((index & mask) << 3);
+    }
+
+}
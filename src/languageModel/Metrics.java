@@ -0,0 +1,426 @@
+package languageModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class that holds the counters, timers and histograms of a recovery run, and writes them out as JSON or in the
+ * Prometheus text format. Metrics are created once, by name, when the classes recording them are loaded, and
+ * recording a value only adds to LongAdders, so it never allocates and threads recording at the same time
+ * rarely contend.
+ *
+ * Histograms count values in buckets of powers of two: bucket i holds the values from 2^(i-1) up to 2^i - 1, and
+ * bucket 0 holds 0. Timers are histograms of nanoseconds that are written out in seconds.
+ *
+ * @author Shaquille Momoh
+ */
+public class Metrics {
+
+    /**
+     * The metrics every class of the project records to.
+     */
+    public static final Metrics DEFAULT = new Metrics("twotimepad");
+
+    private static final int BUCKETS = 64;
+
+    private final String namespace;
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * A constructor that creates an empty set of metrics.
+     *
+     * @param namespace : The prefix of the name of every metric, such as "twotimepad".
+     */
+    public Metrics(String namespace) {
+        this.namespace = namespace;
+    }
+
+    /**
+     * A method that returns the counter with the given name, creating it if there is none.
+     *
+     * @param name : The name of the counter, without the namespace, such as "corpus_bytes_total".
+     * @param help : What the counter counts.
+     * @return : The counter.
+     */
+    public synchronized Counter counter(String name, String help) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Counter(name, help);
+            metrics.put(name, metric);
+        }
+        return cast(metric, Counter.class);
+    }
+
+    /**
+     * A method that returns the histogram with the given name, creating it if there is none.
+     *
+     * @param name : The name of the histogram, without the namespace.
+     * @param help : What the histogram measures.
+     * @return : The histogram.
+     */
+    public synchronized Histogram histogram(String name, String help) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Histogram(name, help, 1.0);
+            metrics.put(name, metric);
+        }
+        return cast(metric, Histogram.class);
+    }
+
+    /**
+     * A method that returns the timer with the given name, creating it if there is none.
+     *
+     * @param name : The name of the timer, without the namespace, ending in "_seconds".
+     * @param help : What the timer times.
+     * @return : The timer.
+     */
+    public synchronized Timer timer(String name, String help) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Timer(name, help);
+            metrics.put(name, metric);
+        }
+        return cast(metric, Timer.class);
+    }
+
+    private static <T extends Metric> T cast(Metric metric, Class<T> type) {
+        // A timer is a histogram, but a histogram is not a timer.
+        if (!type.isInstance(metric) || (type == Histogram.class && metric instanceof Timer)) {
+            throw new IllegalArgumentException("The metric " + metric.name + " is a " +
+                    metric.getClass().getSimpleName() + ", not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    private synchronized List<Metric> snapshot() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /**
+     * A method that sets every metric back to zero, keeping the metrics themselves.
+     */
+    public void reset() {
+        for (Metric metric : snapshot()) {
+            metric.reset();
+        }
+    }
+
+    /**
+     * @return : Every metric as one JSON object, keyed on the full name of each metric. A counter is a number, and
+     * a histogram an object holding its count, sum, maximum and the cumulative count of each bucket up to its
+     * upper bound.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (Metric metric : snapshot()) {
+            json.append(separator).append("  \"").append(namespace).append('_').append(metric.name).append("\": ");
+            metric.appendJson(json);
+            separator = ",\n";
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    /**
+     * @return : Every metric in the Prometheus text exposition format.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        for (Metric metric : snapshot()) {
+            String name = namespace + "_" + metric.name;
+            text.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(metric.type()).append('\n');
+            metric.appendPrometheus(name, text);
+        }
+        return text.toString();
+    }
+
+    /**
+     * A method that writes every metric to a file, as JSON if its name ends in ".json" and in the Prometheus text
+     * format otherwise. The metrics are written to a temporary file that then replaces the file, so a reader
+     * never sees half of them.
+     *
+     * @param f : The file to write.
+     * @throws IOException
+     */
+    public void write(File f) throws IOException {
+        String text = f.getName().endsWith(".json") ? toJson() : toPrometheus();
+        File dir = f.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(f.getName(), ".tmp", dir);
+        try {
+            Files.write(tmp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * A method that writes every metric to a file every 'period', from a daemon thread, until the returned task
+     * is cancelled. Errors writing the file are printed and the next write is still attempted.
+     *
+     * @param f      : The file to write, see 'write'.
+     * @param period : The time between writes.
+     * @param unit   : The unit of 'period'.
+     * @return : The task writing the file.
+     */
+    public synchronized ScheduledFuture<?> writeEvery(final File f, long period, TimeUnit unit) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "metrics-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    write(f);
+                } catch (IOException e) {
+                    System.err.println("Could not write the metrics to " + f + ": " + e.getMessage());
+                }
+            }
+        }, period, period, unit);
+    }
+
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.9g", value);
+    }
+
+    /**
+     * A class holding what every metric has: its name and what it measures.
+     */
+    public abstract static class Metric {
+
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract void reset();
+
+        abstract void appendJson(StringBuilder json);
+
+        abstract void appendPrometheus(String name, StringBuilder text);
+
+    }
+
+    /**
+     * A class counting events, or an amount such as bytes, that only ever goes up.
+     */
+    public static class Counter extends Metric {
+
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void reset() {
+            count.reset();
+        }
+
+        @Override
+        void appendJson(StringBuilder json) {
+            json.append(get());
+        }
+
+        @Override
+        void appendPrometheus(String name, StringBuilder text) {
+            text.append(name).append(' ').append(get()).append('\n');
+        }
+
+    }
+
+    /**
+     * A class counting values, such as beam widths, in buckets of powers of two, with their sum and maximum.
+     */
+    public static class Histogram extends Metric {
+
+        // The factor values are multiplied by when they are written out.
+        private final double unit;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String help, double unit) {
+            super(name, help);
+            this.unit = unit;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * A method that records a value, which is clamped to 0 if it is negative.
+         *
+         * @param value : The value to record.
+         */
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+            count.increment();
+            sum.add(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return : The sum of the values recorded, in the unit they are written out in.
+         */
+        public double getSum() {
+            return sum.sum() * unit;
+        }
+
+        /**
+         * @return : The largest value recorded, in the unit it is written out in.
+         */
+        public double getMax() {
+            return max.get() * unit;
+        }
+
+        /**
+         * @return : The upper bound of bucket i, in the unit it is written out in.
+         */
+        private double upperBound(int i) {
+            return ((1L << i) - 1) * unit;
+        }
+
+        @Override
+        String type() {
+            return "histogram";
+        }
+
+        @Override
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+            max.set(0);
+        }
+
+        @Override
+        void appendJson(StringBuilder json) {
+            long total = getCount();
+            json.append("{\"count\": ").append(total)
+                    .append(", \"sum\": ").append(number(getSum()))
+                    .append(", \"max\": ").append(number(getMax()))
+                    .append(", \"mean\": ").append(number(total == 0 ? 0.0 : getSum() / total))
+                    .append(", \"buckets\": {");
+            String separator = "";
+            long cumulative = 0;
+            for (int i = 0; i <= lastBucket(); i++) {
+                cumulative += buckets[i].sum();
+                json.append(separator).append('"').append(number(upperBound(i))).append("\": ").append(cumulative);
+                separator = ", ";
+            }
+            json.append("}}");
+        }
+
+        @Override
+        void appendPrometheus(String name, StringBuilder text) {
+            long cumulative = 0;
+            for (int i = 0; i <= lastBucket(); i++) {
+                cumulative += buckets[i].sum();
+                text.append(name).append("_bucket{le=\"").append(number(upperBound(i))).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            text.append(name).append("_bucket{le=\"+Inf\"} ").append(getCount()).append('\n');
+            text.append(name).append("_sum ").append(number(getSum())).append('\n');
+            text.append(name).append("_count ").append(getCount()).append('\n');
+        }
+
+        /**
+         * @return : The last bucket holding a value, or -1 if no value was recorded.
+         */
+        private int lastBucket() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (buckets[i].sum() > 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * A class timing an operation, recording nanoseconds and writing them out in seconds. An operation is timed
+     * by passing the value of 'System.nanoTime' from before it to 'since'.
+     */
+    public static class Timer extends Histogram {
+
+        Timer(String name, String help) {
+            super(name, help, 1e-9);
+        }
+
+        /**
+         * A method that records the time from 'start' until now.
+         *
+         * @param start : The value of 'System.nanoTime' when the operation started.
+         */
+        public void since(long start) {
+            record(System.nanoTime() - start);
+        }
+
+    }
+
+}
@@ -0,0 +1,178 @@
+package languageModel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A class that writes a language model to a compact binary file, and opens such a file by memory-mapping it.
+ * A model only has to be built from the corpus once, and every recovery process that opens the file shares
+ * its pages through the page cache.
+ *
+ * The file is big-endian and laid out as:
+ *   magic "TTPM" (int), version (int), n (int), vocabulary size (int), corpus length (long),
+ *   then for each n-gram length from 1 to n: the number of n-grams (int), their packed keys sorted in
+ *   ascending order (long[]), their counts (int[]) and their log probabilities (double[]).
+ *
+ * @author Shaquille Momoh
+ */
+public class ModelFile {
+
+    public static final int MAGIC = 0x5454504D;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private static final Metrics.Timer LOAD_TIME = Metrics.DEFAULT.timer("model_load_seconds",
+            "Time taken to open a model file.");
+
+    /**
+     * A method that writes a store whose log probabilities have been calculated to a model file.
+     *
+     * @param store : The store to write.
+     * @param f     : The file to write to.
+     * @throws IOException
+     */
+    public static void write(NGramStore store, File f) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f),
+                1 << 20))) {
+            writeHeader(out, store.getN(), store.getVocabSize(), store.getCorpusLength());
+
+            for (int order = 1; order <= store.getN(); order++) {
+                NGramTable table = store.getTable(order);
+                long[] keys = new long[table.size()];
+                int size = 0;
+                for (int slot = 0; slot < table.capacity(); slot++) {
+                    if (table.isOccupied(slot)) {
+                        keys[size++] = table.keyAt(slot);
+                    }
+                }
+                Arrays.sort(keys);
+
+                out.writeInt(keys.length);
+                for (long key : keys) {
+                    out.writeLong(key);
+                }
+                for (long key : keys) {
+                    out.writeInt(table.countAt(table.indexOf(key)));
+                }
+                for (long key : keys) {
+                    out.writeDouble(table.logProbAt(table.indexOf(key)));
+                }
+            }
+        }
+    }
+
+    /**
+     * A method that writes the header of a model file, which the n-grams of each length follow.
+     *
+     * @param out          : The stream of the model file.
+     * @param n            : The maximum size of the n-grams.
+     * @param vocabSize    : The number of n-grams of every length.
+     * @param corpusLength : The length of the corpus.
+     * @throws IOException
+     */
+    static void writeHeader(DataOutputStream out, int n, int vocabSize, long corpusLength) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(n);
+        out.writeInt(vocabSize);
+        out.writeLong(corpusLength);
+    }
+
+    /**
+     * A method that opens a model file by memory-mapping it. Each section is mapped in segments of at most 1 GB,
+     * so an n-gram length may have more n-grams than fit in one buffer.
+     *
+     * @param f : The model file.
+     * @return : The model, ready to score candidates.
+     * @throws IOException : If the file cannot be read or is not a model file of a supported version.
+     */
+    public static MappedModel open(File f) throws IOException {
+        return open(f, SEGMENT_SIZE);
+    }
+
+    /**
+     * A method that opens a model file by memory-mapping each section in segments of at most the given size.
+     * Smaller segments let the tests cross segment boundaries without gigabytes of model.
+     *
+     * @param f           : The model file.
+     * @param segmentSize : The most bytes mapped in one segment, a power of two from 8 to 1 GB.
+     * @return : The model, ready to score candidates.
+     * @throws IOException : If the file cannot be read or is not a model file of a supported version.
+     */
+    public static MappedModel open(File f, int segmentSize) throws IOException {
+        if (segmentSize < 8 || segmentSize > SEGMENT_SIZE || Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("The segment size must be a power of two from 8 to " + SEGMENT_SIZE +
+                    " but was " + segmentSize);
+        }
+        // The number of elements in a segment of the widest, 8 byte, elements.
+        int segmentShift = Integer.numberOfTrailingZeros(segmentSize / 8);
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, HEADER_SIZE, f);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(f + " is not a TwoTimePad model file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(f + " has model file version " + version + " but only version " + VERSION +
+                        " is supported");
+            }
+            int n = header.getInt();
+            int vocabSize = header.getInt();
+            long corpusLength = header.getLong();
+            if (n < 1 || n > NGramStore.MAX_N) {
+                throw new IOException(f + " has n = " + n + " but n must be between 1 and " + NGramStore.MAX_N);
+            }
+            if (vocabSize < 0 || corpusLength < 0) {
+                throw new IOException(f + " has a negative vocabulary size or corpus length");
+            }
+
+            MappedSection[] keys = new MappedSection[n];
+            MappedSection[] counts = new MappedSection[n];
+            MappedSection[] logProbs = new MappedSection[n];
+            long offset = HEADER_SIZE;
+
+            for (int order = 1; order <= n; order++) {
+                int size = map(channel, offset, 4, f).getInt();
+                offset += 4;
+                if (size < 0) {
+                    throw new IOException(f + " has " + size + " n-grams of length " + order);
+                }
+                if (offset + (long) size * 20 > channel.size()) {
+                    throw new IOException(f + " is truncated");
+                }
+                keys[order - 1] = MappedSection.map(channel, offset, size, 8, segmentShift);
+                offset += (long) size * 8;
+                counts[order - 1] = MappedSection.map(channel, offset, size, 4, segmentShift);
+                offset += (long) size * 4;
+                logProbs[order - 1] = MappedSection.map(channel, offset, size, 8, segmentShift);
+                offset += (long) size * 8;
+            }
+
+            if (offset != channel.size()) {
+                throw new IOException(f + " is truncated or has trailing data");
+            }
+
+            return new MappedModel(n, vocabSize, corpusLength, keys, counts, logProbs);
+        } finally {
+            LOAD_TIME.since(start);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size, File f) throws IOException {
+        if (offset + size > channel.size()) {
+            throw new IOException(f + " is truncated");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+
+}
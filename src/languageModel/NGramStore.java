@@ -0,0 +1,417 @@
+package languageModel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A class that holds the counts and laplace smoothed log probabilities of all n-grams (1 to n) of a corpus.
+ * There is one NGramTable per n-gram length, and n-grams are packed into longs one byte per character,
+ * so n can be at most 8.
+ *
+ * @author Shaquille Momoh
+ */
+public class NGramStore implements Scorer {
+
+    public static final int MAX_N = 8;
+
+    // The number of slots of a table whose log probabilities are calculated by one task.
+    private static final int BAKE_SHARD_SLOTS = 1 << 16;
+
+    // The probability given to unseen n-grams by 'NGramModel.estimateProbability', divided by the n-gram length.
+    private static final double UNSEEN_PROBABILITY = 0.0000001;
+
+    private final int n;
+    private final NGramTable[] tables;
+    private long corpusLength;
+    private int vocabSize;
+
+    // The log probability given to an unseen n-gram, indexed by the length of the n-gram.
+    private final double[] unseenLogProbs;
+
+    // The most conditional log probability the store gives, found on first use and forgotten when it is baked.
+    private volatile double maxLogProb = Double.NaN;
+
+    /**
+     * A constructor that creates an empty store for n-grams of length 1 to n.
+     *
+     * @param n : The maximum size of n-grams to be stored.
+     */
+    public NGramStore(int n) {
+        if (n < 1 || n > MAX_N) {
+            throw new IllegalArgumentException("n must be between 1 and " + MAX_N + " but was " + n);
+        }
+        this.n = n;
+        this.tables = new NGramTable[n];
+        for (int i = 0; i < n; i++) {
+            tables[i] = new NGramTable();
+        }
+        this.unseenLogProbs = new double[n + 1];
+        for (int length = 1; length <= n; length++) {
+            unseenLogProbs[length] = unseenLogProb(length);
+        }
+    }
+
+    /**
+     * A method that returns the log probability given to an unseen n-gram, as in 'NGramModel.estimateProbability'.
+     *
+     * @param length : The length of the n-gram.
+     * @return : The log probability.
+     */
+    public static double unseenLogProb(int length) {
+        return Math.log(UNSEEN_PROBABILITY / length);
+    }
+
+    /**
+     * A method that creates a store from an array of maps of n-grams, as returned by 'Split.splitMap'.
+     * The log probabilities are calculated before the store is returned.
+     *
+     * @param mapArr       : An array of maps containing the n-grams of length 1 to n, along with their counts.
+     * @param corpusLength : The number of characters in the corpus.
+     * @return : The store holding the same n-grams.
+     */
+    public static NGramStore fromMaps(Map<String, Integer>[] mapArr, long corpusLength) {
+        NGramStore store = new NGramStore(mapArr.length);
+        for (int map = 0; map < mapArr.length; map++) {
+            NGramTable table = store.tables[map];
+            for (Map.Entry<String, Integer> e : mapArr[map].entrySet()) {
+                String ngram = e.getKey();
+                table.add(pack(ngram, 0, ngram.length()), e.getValue());
+            }
+        }
+        store.corpusLength = corpusLength;
+        store.bakeLaplace();
+        return store;
+    }
+
+    /**
+     * A method that packs the characters of text from start (inclusive) to end (exclusive) into a long.
+     * Only the low byte of each character is kept.
+     *
+     * @param text  : The text containing the n-gram.
+     * @param start : The start of the n-gram.
+     * @param end   : The end of the n-gram.
+     * @return : The packed n-gram.
+     */
+    public static long pack(CharSequence text, int start, int end) {
+        long key = 0;
+        for (int i = start; i < end; i++) {
+            key = (key << 8) | (text.charAt(i) & 0xFF);
+        }
+        return key;
+    }
+
+    /**
+     * A method that returns a mask keeping the last 'length' bytes of a packed n-gram.
+     *
+     * @param length : The number of bytes to keep.
+     * @return : The mask.
+     */
+    public static long mask(int length) {
+        return length >= 8 ? -1L : (1L << (length * 8)) - 1;
+    }
+
+    /**
+     * A method that counts every n-gram of length 1 to n in the given text, and adds the text to the corpus length.
+     * 'bakeLaplace' must be called once all text has been added.
+     *
+     * @param text : The text to count the n-grams of.
+     */
+    public void addNGrams(CharSequence text) {
+        int length = text.length();
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            key = (key << 8) | (text.charAt(i) & 0xFF);
+            int maxOrder = Math.min(n, i + 1);
+            for (int order = 1; order <= maxOrder; order++) {
+                tables[order - 1].add(key & mask(order), 1);
+            }
+        }
+        corpusLength += length;
+    }
+
+    /**
+     * A method that counts every n-gram of length 1 to n starting at a position from 'from' (inclusive) to 'to'
+     * (exclusive) of the given bytes, where no n-gram may extend past 'limit'. The bytes from 'to' up to 'limit'
+     * are the overlap with the next chunk, so chunks counted this way give the same counts as one pass.
+     *
+     * @param bytes : The bytes of the corpus.
+     * @param from  : The first start position to count.
+     * @param to    : The start position after the last one to count.
+     * @param limit : The end of the bytes n-grams may use.
+     */
+    public void addNGrams(byte[] bytes, int from, int to, int limit) {
+        addNGrams(ByteBuffer.wrap(bytes), from, to, limit);
+    }
+
+    /**
+     * A method that counts n-grams as 'addNGrams(byte[], int, int, int)' does, reading the bytes from a buffer
+     * (such as a memory-mapped view of the corpus) without copying them.
+     *
+     * @param bytes : The bytes of the corpus, indexed from 0.
+     * @param from  : The first start position to count.
+     * @param to    : The start position after the last one to count.
+     * @param limit : The end of the bytes n-grams may use.
+     */
+    public void addNGrams(ByteBuffer bytes, int from, int to, int limit) {
+        for (int i = from; i < to; i++) {
+            long key = 0;
+            int maxOrder = Math.min(n, limit - i);
+            for (int order = 1; order <= maxOrder; order++) {
+                key = (key << 8) | (bytes.get(i + order - 1) & 0xFF);
+                tables[order - 1].add(key, 1);
+            }
+        }
+        corpusLength += to - from;
+    }
+
+    /**
+     * A method that counts every n-gram of length 1 to n starting at a position of the corpus from 'from'
+     * (inclusive) to 'to' (exclusive), reading the n-1 bytes after 'to' as well, as 'addNGrams(ByteBuffer, int,
+     * int, int)' does. The n-grams are read from each mapped segment of the corpus in turn, and only the few
+     * starting in the last n-1 bytes of a segment are copied, so a range of any length copies at most 2(n-1)
+     * bytes at each segment boundary.
+     *
+     * @param corpus : The corpus.
+     * @param from   : The first start position to count.
+     * @param to     : The start position after the last one to count.
+     */
+    public void addNGrams(Corpus corpus, long from, long to) {
+        long limit = Math.min(corpus.length(), to + n - 1);
+        long position = from;
+        while (position < to) {
+            long segmentEnd = corpus.segmentEnd(position);
+            // The n-grams starting here that end inside the segment are read straight from it.
+            long inSegment = limit <= segmentEnd ? to : Math.min(to, segmentEnd - (n - 1));
+            if (inSegment > position) {
+                ByteBuffer view = corpus.slice(position, Math.min(limit, segmentEnd));
+                addNGrams(view, 0, (int) (inSegment - position), view.limit());
+                position = inSegment;
+            }
+            // The n-grams that cross into the next segment.
+            long crossing = Math.min(to, segmentEnd);
+            if (position < crossing) {
+                ByteBuffer copy = corpus.slice(position, Math.min(limit, crossing + n - 1));
+                addNGrams(copy, 0, (int) (crossing - position), copy.limit());
+                position = crossing;
+            }
+        }
+    }
+
+    /**
+     * A method that adds the counts of another store of the same n to this one.
+     *
+     * @param other : The store to add.
+     * @return : This store.
+     */
+    public NGramStore merge(NGramStore other) {
+        for (int order = 1; order <= n; order++) {
+            NGramTable table = tables[order - 1];
+            NGramTable otherTable = other.tables[order - 1];
+            for (int slot = 0; slot < otherTable.capacity(); slot++) {
+                if (otherTable.isOccupied(slot)) {
+                    table.add(otherTable.keyAt(slot), otherTable.countAt(slot));
+                }
+            }
+        }
+        corpusLength += other.corpusLength;
+        return this;
+    }
+
+    /**
+     * A method that adds to the number of characters in the corpus, for counts added directly to the tables.
+     *
+     * @param length : The number of characters to add.
+     */
+    public void addCorpusLength(long length) {
+        corpusLength += length;
+    }
+
+    /**
+     * A method that calculates the laplace smoothed log probability of every stored n-gram.
+     * (count of n-gram + 1) / (count of its (n-1)-gram + vocabulary size), where the count of the
+     * (n-1)-gram of a single character is the length of the corpus. This matches 'NGramModel.laplaceSmoothing'.
+     * Each table is split into shards of slots, and all shards of all lengths are baked in parallel, since a shard
+     * only writes the log probabilities of its own slots and only reads the counts of the shorter table.
+     */
+    public void bakeLaplace() {
+        maxLogProb = Double.NaN;
+        vocabSize = 0;
+        for (NGramTable table : tables) {
+            vocabSize += table.size();
+        }
+
+        final List<RecursiveAction> shards = new ArrayList<>();
+        for (int order = 1; order <= n; order++) {
+            int capacity = tables[order - 1].capacity();
+            for (int from = 0; from < capacity; from += BAKE_SHARD_SLOTS) {
+                final int shardOrder = order;
+                final int shardFrom = from;
+                final int shardTo = Math.min(capacity, from + BAKE_SHARD_SLOTS);
+                shards.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        bakeLaplace(shardOrder, shardFrom, shardTo);
+                    }
+                });
+            }
+        }
+
+        if (shards.size() == 1) {
+            shards.get(0).invoke();
+        } else {
+            ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(shards);
+                }
+            });
+        }
+    }
+
+    /**
+     * A method that calculates the laplace smoothed log probability of the n-grams in the slots from 'from'
+     * (inclusive) to 'to' (exclusive) of the table of the given length.
+     */
+    private void bakeLaplace(int order, int from, int to) {
+        NGramTable table = tables[order - 1];
+        NGramTable prefixes = order == 1 ? null : tables[order - 2];
+        for (int slot = from; slot < to; slot++) {
+            if (table.isOccupied(slot)) {
+                long denomCount = order == 1 ? corpusLength : prefixes.getCount(table.keyAt(slot) >>> 8);
+                double estimate = (1.0 + table.countAt(slot)) / (denomCount + vocabSize);
+                table.setLogProbAt(slot, Math.log(estimate));
+            }
+        }
+    }
+
+    /**
+     * A method that returns the log probability of a packed n-gram, falling back to the estimate
+     * given to unseen n-grams. The empty n-gram always has a log probability of 0.
+     *
+     * @param key    : The packed n-gram.
+     * @param length : The length of the n-gram.
+     * @return : The log probability of the n-gram.
+     */
+    public double logProbOf(long key, int length) {
+        if (length == 0) {
+            return 0.0;
+        }
+        NGramTable table = tables[length - 1];
+        int slot = table.indexOf(key);
+        return slot < 0 ? unseenLogProbs[length] : table.logProbAt(slot);
+    }
+
+    /**
+     * A method that returns the log probability of the next character following the given context.
+     * This is the log probability of the n-gram (context + next) minus the log probability of the context.
+     *
+     * @param context : The packed context, holding the last 'length' characters.
+     * @param length  : The length of the context (at most n - 1).
+     * @param next    : The next character.
+     * @return : The conditional log probability.
+     */
+    @Override
+    public double logProbability(long context, int length, int next) {
+        long key = (context << 8) | (next & 0xFF);
+        return logProbOf(key, length + 1) - logProbOf(context, length);
+    }
+
+    /**
+     * A method that fills 'row' with the log probability of every 7-bit Ascii character following the given
+     * context. The log probability of the context is only looked up once.
+     *
+     * @param context : The packed context, holding the last 'length' characters.
+     * @param length  : The length of the context (at most n - 1).
+     * @param row     : The array to fill, of at least ROW_WIDTH elements.
+     */
+    @Override
+    public void scoreRow(long context, int length, double[] row) {
+        double contextLogProb = logProbOf(context, length);
+        long prefix = context << 8;
+        for (int next = 0; next < ROW_WIDTH; next++) {
+            row[next] = logProbOf(prefix | next, length + 1) - contextLogProb;
+        }
+    }
+
+    /**
+     * A method that returns the most conditional log probability the store gives any character following any
+     * context. Laplace smoothing does not give a true distribution over the next character, so this can be above
+     * 0: an n-gram seen as often as its context is more probable than the context itself whenever the context's
+     * own prefix was seen more often. It is found on first use and kept until the store is baked again.
+     *
+     * @return : The most log probability of any character following any context.
+     */
+    @Override
+    public double maxLogProbability() {
+        double max = maxLogProb;
+        if (Double.isNaN(max)) {
+            max = findMaxLogProbability();
+            maxLogProb = max;
+        }
+        return max;
+    }
+
+    /**
+     * A method that finds the most conditional log probability from every stored n-gram, where the context of an
+     * unseen n-gram is either unseen or at best the least probable stored context of its length.
+     */
+    private double findMaxLogProbability() {
+        double max = Double.NEGATIVE_INFINITY;
+        // The least log probability of a stored context of the current length, where the empty context has 0.
+        double leastContext = 0.0;
+        for (int length = 0; length < n; length++) {
+            max = Math.max(max, unseenLogProbs[length + 1] - leastContext);
+            if (length > 0) {
+                max = Math.max(max, unseenLogProbs[length + 1] - unseenLogProbs[length]);
+            }
+
+            NGramTable table = tables[length];
+            double least = Double.POSITIVE_INFINITY;
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isOccupied(slot)) {
+                    double logProb = table.logProbAt(slot);
+                    least = Math.min(least, logProb);
+                    max = Math.max(max, logProb - logProbOf(table.keyAt(slot) >>> 8, length));
+                }
+            }
+            leastContext = least;
+        }
+        return max;
+    }
+
+    /**
+     * A method that returns the count of an n-gram.
+     *
+     * @param ngram : The n-gram.
+     * @return : The number of times the n-gram was seen in the corpus.
+     */
+    public int getCount(String ngram) {
+        int length = ngram.length();
+        if (length < 1 || length > n) {
+            return 0;
+        }
+        return tables[length - 1].getCount(pack(ngram, 0, length));
+    }
+
+    public NGramTable getTable(int order) {
+        return tables[order - 1];
+    }
+
+    @Override
+    public int getN() {
+        return n;
+    }
+
+    public long getCorpusLength() {
+        return corpusLength;
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+}
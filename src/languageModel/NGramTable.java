@@ -0,0 +1,179 @@
+package languageModel;
+
+import java.util.Arrays;
+
+/**
+ * A class defining an open-addressed hash table of n-grams of a single length.
+ * Each n-gram is packed into a long (one byte per character), and its count and log probability
+ * are held in arrays parallel to the keys, so no String, Integer or Double objects are created per n-gram.
+ *
+ * @author Shaquille Momoh
+ */
+public class NGramTable {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // The number of bytes used by each slot of the table: a key, a count and a log probability.
+    public static final int BYTES_PER_SLOT = 8 + 4 + 8;
+
+    private long[] keys;
+    private int[] counts;
+    private double[] logProbs;
+    private int size;
+    private int mask;
+
+    /**
+     * A constructor that creates an empty table.
+     */
+    public NGramTable() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * A constructor that creates an empty table able to hold the given number of n-grams without resizing.
+     *
+     * @param expected : The number of n-grams the table is expected to hold.
+     */
+    public NGramTable(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new int[capacity];
+        logProbs = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * A method that spreads the bits of a packed n-gram to give its home slot in the table.
+     *
+     * @param key : The packed n-gram.
+     * @return : The home slot of the n-gram.
+     */
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * A method that finds the slot holding the given n-gram.
+     * A slot with a count of zero is empty, since every stored n-gram has been seen at least once.
+     *
+     * @param key : The packed n-gram.
+     * @return : The slot of the n-gram, or -1 if it is not in the table.
+     */
+    public int indexOf(long key) {
+        int slot = home(key);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * A method that adds the given amount to the count of an n-gram, inserting it if it is not yet stored.
+     * Counts saturate at Integer.MAX_VALUE rather than overflowing.
+     *
+     * @param key   : The packed n-gram.
+     * @param delta : The amount to add to the count (must be positive).
+     * @return : The slot of the n-gram.
+     */
+    public int add(long key, int delta) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+        int slot = home(key);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot] = (int) Math.min(Integer.MAX_VALUE, (long) counts[slot] + delta);
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        size++;
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        double[] oldLogProbs = logProbs;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = home(oldKeys[i]);
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                logProbs[slot] = oldLogProbs[i];
+            }
+        }
+    }
+
+    /**
+     * A method that returns the count of an n-gram.
+     *
+     * @param key : The packed n-gram.
+     * @return : The number of times the n-gram was seen, or 0 if it was never seen.
+     */
+    public int getCount(long key) {
+        int slot = indexOf(key);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * @return : The number of distinct n-grams stored in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return : The number of slots in the table. Slots are indexed from 0 to capacity() - 1.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isOccupied(int slot) {
+        return counts[slot] != 0;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int countAt(int slot) {
+        return counts[slot];
+    }
+
+    public double logProbAt(int slot) {
+        return logProbs[slot];
+    }
+
+    public void setLogProbAt(int slot, double logProb) {
+        logProbs[slot] = logProb;
+    }
+
+    /**
+     * A method that removes every n-gram from the table, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+}
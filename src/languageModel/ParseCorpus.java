@@ -1,10 +1,9 @@
 package languageModel;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -17,6 +16,7 @@ public class ParseCorpus {
 
     /**
      * Converts an file to String.
+     * Each file is read in one go and every byte becomes one character.
      *
      * @param f : The file to be converted.
      * @return The converted file as a String.
@@ -24,24 +24,15 @@ public class ParseCorpus {
      */
     public String fileToString(File f) throws IOException {
 
-        InputStream is = null;
-        StringBuilder builder;
-        builder = new StringBuilder();
+        StringBuilder builder = new StringBuilder();
 
-        int ch;
         if(f.isDirectory()){
             File[] dir = f.listFiles();
             for (int i = 0; i < dir.length; i++) {
-                is = new FileInputStream(dir[i]);
-                while ((ch = is.read()) != -1) {
-                    builder.append((char) ch);
-                }
+                builder.append(new String(Files.readAllBytes(dir[i].toPath()), StandardCharsets.ISO_8859_1));
             }
         } else {
-            is = new FileInputStream(f);
-            while ((ch = is.read()) != -1) {
-                builder.append((char) ch);
-            }
+            builder.append(new String(Files.readAllBytes(f.toPath()), StandardCharsets.ISO_8859_1));
         }
         return builder.toString();
     }
@@ -49,29 +40,58 @@ public class ParseCorpus {
     /**
      * A method used to process the corpus into n-grams concurrently.
      *
-     * @return The processed n-grams stored in a ConcurrentHashMap
+     * @return The processed n-grams and their counts stored in an NGramStore.
      * @throws IOException, InterruptedException
      */
-    public ConcurrentHashMap<String, Integer> processFiles(File f, int n) throws IOException, InterruptedException,
+    public NGramStore processFiles(File f, int n) throws IOException, InterruptedException,
             ExecutionException {
+        return processCorpus(Corpus.map(f), n);
+    }
 
-        long corpusLength = 0;
-        ConcurrentHashMap<String, Integer> languageModel = new ConcurrentHashMap<>();
+    /**
+     * A method used to process a corpus into n-grams in a single streaming pass, for corpora whose counts do not
+     * fit in memory. Counts beyond the memory budget are written to temporary files and merged at the end.
+     *
+     * @param f            : The corpus file or directory.
+     * @param n            : The maximum size of n-grams to be counted.
+     * @param memoryBudget : The number of bytes the counts may use before they are written to disk.
+     * @return The processed n-grams and their counts stored in an NGramStore.
+     * @throws IOException
+     */
+    public NGramStore processFilesStreaming(File f, int n, long memoryBudget) throws IOException {
+        return new StreamingCounter(n, memoryBudget, null).count(f);
+    }
 
-        if (f.isDirectory()) {
-            File[] dir = f.listFiles();
-            for (int i = 0; i < dir.length; i++) {
-                corpusLength += dir[i].length();
-            }
-        } else {
-            corpusLength = f.length();
-        }
+    /**
+     * A method used to build the laplace smoothed language model of a corpus in a single streaming pass, for
+     * corpora whose distinct n-grams do not fit in memory. The counts are merged straight into the model file.
+     *
+     * @param f            : The corpus file or directory.
+     * @param n            : The maximum size of n-grams to be counted.
+     * @param memoryBudget : The number of bytes the counts may use before they are written to disk.
+     * @param modelFile    : The model file to write.
+     * @return The model file, opened.
+     * @throws IOException
+     */
+    public MappedModel processFilesToModel(File f, int n, long memoryBudget, File modelFile) throws IOException {
+        return new StreamingCounter(n, memoryBudget, null).countToModel(f, modelFile);
+    }
+
+    /**
+     * A method used to process a memory-mapped corpus into n-grams concurrently.
+     *
+     * @param corpus : The corpus to process.
+     * @param n      : The maximum size of n-grams to be counted.
+     * @return The processed n-grams and their counts stored in an NGramStore.
+     * @throws IOException, InterruptedException
+     */
+    public NGramStore processCorpus(Corpus corpus, int n) throws IOException, InterruptedException,
+            ExecutionException {
 
-        Split split = new Split(f, languageModel, n);
+        Split split = new Split(corpus, n);
         int noThreads = split.getThreadNumber();
         long chunks = split.getChunkNumber(noThreads);
-        split.processAll(noThreads, chunks, (int)corpusLength);
-        return languageModel;
+        return split.processAll(noThreads, chunks, corpus.length());
 
     }
 }
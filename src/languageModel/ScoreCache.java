@@ -0,0 +1,309 @@
+package languageModel;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class that caches the rows of log probabilities of another scorer, so a row looked up for one candidate is
+ * reused by every other plaintext, candidate and search with the same context. A row is keyed on the packed
+ * context and its length.
+ *
+ * The cache holds at most 'capacity' rows, split between independently locked stripes so parallel workers rarely
+ * wait for each other. Each stripe keeps its rows in one preallocated array and evicts with the CLOCK algorithm:
+ * every hit sets a row's reference bit, and the clock hand clears set bits as it passes, evicting the first row
+ * whose bit is already clear. A new row starts with its bit clear, so rows that are only ever asked for once are
+ * evicted before rows that are reused. Rows are computed outside the lock.
+ * It is safe to share between threads, and between searches using the same language model.
+ *
+ * @author Shaquille Momoh
+ */
+public class ScoreCache implements Scorer {
+
+    private static final int MAX_STRIPES = 64;
+    private static final int MAX_STRIPE_ROWS = Integer.MAX_VALUE / ROW_WIDTH;
+
+    // The hits, misses and evictions of every cache together, beside the counts of this cache.
+    private static final Metrics.Counter ALL_HITS = Metrics.DEFAULT.counter("score_cache_hits_total",
+            "Rows of log probabilities found in a score cache.");
+    private static final Metrics.Counter ALL_MISSES = Metrics.DEFAULT.counter("score_cache_misses_total",
+            "Rows of log probabilities computed because they were not in a score cache.");
+    private static final Metrics.Counter ALL_EVICTIONS = Metrics.DEFAULT.counter("score_cache_evictions_total",
+            "Rows evicted from a score cache to make room.");
+
+    private final Scorer scorer;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A constructor that creates an empty cache in front of the given scorer.
+     *
+     * @param scorer   : The language model whose rows are cached.
+     * @param capacity : The most rows to keep, each taking ROW_WIDTH doubles.
+     */
+    public ScoreCache(Scorer scorer, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of the cache must be at least 1 but was " + capacity);
+        }
+        this.scorer = scorer;
+
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES && stripeCount * 2 <= capacity) {
+            stripeCount <<= 1;
+        }
+        // Each stripe holds its rows in one array of doubles, which an int must be able to index.
+        int stripeCapacity = capacity / stripeCount + (capacity % stripeCount == 0 ? 0 : 1);
+        if (stripeCapacity > MAX_STRIPE_ROWS) {
+            throw new IllegalArgumentException("The capacity of the cache (-cache) must be at most " +
+                    (long) MAX_STRIPE_ROWS * stripeCount + " rows but was " + capacity);
+        }
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++) {
+            // The capacity is split as evenly as possible between the stripes.
+            stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * A method that packs a context and its length into the key of its row. A context holds at most 7 bytes,
+     * so it fits above the 3 bits of the length.
+     */
+    private static long rowKey(long context, int length) {
+        return (context << 3) | length;
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public double logProbability(long context, int length, int next) {
+        return scorer.logProbability(context, length, next);
+    }
+
+    @Override
+    public void scoreRow(long context, int length, double[] row) {
+        long key = rowKey(context, length);
+        int h = spread(key);
+        Stripe stripe = stripes[(h >>> 24) & stripeMask];
+
+        if (stripe.get(key, h, row)) {
+            hits.increment();
+            ALL_HITS.increment();
+            return;
+        }
+        misses.increment();
+        ALL_MISSES.increment();
+        scorer.scoreRow(context, length, row);
+        if (stripe.put(key, h, row)) {
+            evictions.increment();
+            ALL_EVICTIONS.increment();
+        }
+    }
+
+    /**
+     * @return : The number of rows held.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return : The most rows the cache can hold.
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (Stripe stripe : stripes) {
+            capacity += stripe.capacity;
+        }
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return : The fraction of rows found in the cache, or 0 if no row has been asked for.
+     */
+    public double hitRate() {
+        long found = hits.sum();
+        long total = found + misses.sum();
+        return total == 0 ? 0.0 : (double) found / total;
+    }
+
+    /**
+     * A method that removes every row from the cache and resets its counters.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public double maxLogProbability() {
+        return scorer.maxLogProbability();
+    }
+
+    @Override
+    public int getN() {
+        return scorer.getN();
+    }
+
+    /**
+     * A class holding one stripe of the cache: its rows, their keys and reference bits, and an open-addressed
+     * table from key to row. Every method locks the stripe.
+     */
+    private static class Stripe {
+
+        private final int capacity;
+        private final double[] rows;
+        private final long[] entryKeys;
+        private final boolean[] referenced;
+        private int size;
+        private int hand;
+
+        private final long[] tableKeys;
+        private final int[] tableEntries;
+        private final int tableMask;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.rows = new double[capacity * ROW_WIDTH];
+            this.entryKeys = new long[capacity];
+            this.referenced = new boolean[capacity];
+
+            int tableSize = 4;
+            while (tableSize < capacity * 2) {
+                tableSize <<= 1;
+            }
+            this.tableKeys = new long[tableSize];
+            this.tableEntries = new int[tableSize];
+            this.tableMask = tableSize - 1;
+            Arrays.fill(tableEntries, -1);
+        }
+
+        synchronized boolean get(long key, int h, double[] row) {
+            int entry = find(key, h);
+            if (entry < 0) {
+                return false;
+            }
+            referenced[entry] = true;
+            System.arraycopy(rows, entry * ROW_WIDTH, row, 0, ROW_WIDTH);
+            return true;
+        }
+
+        /**
+         * A method that stores a row, unless another thread stored it first.
+         *
+         * @return : True if a row was evicted to make room.
+         */
+        synchronized boolean put(long key, int h, double[] row) {
+            if (find(key, h) >= 0) {
+                return false;
+            }
+
+            int entry;
+            boolean evicted = false;
+            if (size < capacity) {
+                entry = size++;
+            } else {
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = hand + 1 == capacity ? 0 : hand + 1;
+                }
+                entry = hand;
+                hand = hand + 1 == capacity ? 0 : hand + 1;
+                remove(entryKeys[entry]);
+                evicted = true;
+            }
+
+            entryKeys[entry] = key;
+            referenced[entry] = false;
+            System.arraycopy(row, 0, rows, entry * ROW_WIDTH, ROW_WIDTH);
+
+            int i = h & tableMask;
+            while (tableEntries[i] >= 0) {
+                i = (i + 1) & tableMask;
+            }
+            tableKeys[i] = key;
+            tableEntries[i] = entry;
+            return evicted;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            Arrays.fill(tableEntries, -1);
+            Arrays.fill(referenced, false);
+            size = 0;
+            hand = 0;
+        }
+
+        private int find(long key, int h) {
+            int i = h & tableMask;
+            while (tableEntries[i] >= 0) {
+                if (tableKeys[i] == key) {
+                    return tableEntries[i];
+                }
+                i = (i + 1) & tableMask;
+            }
+            return -1;
+        }
+
+        /**
+         * A method that removes a key from the table, shifting back the keys probed after it so that
+         * no tombstones are needed.
+         */
+        private void remove(long key) {
+            int i = spread(key) & tableMask;
+            while (tableKeys[i] != key || tableEntries[i] < 0) {
+                i = (i + 1) & tableMask;
+            }
+            int j = i;
+            while (true) {
+                tableEntries[i] = -1;
+                while (true) {
+                    j = (j + 1) & tableMask;
+                    if (tableEntries[j] < 0) {
+                        return;
+                    }
+                    int home = spread(tableKeys[j]) & tableMask;
+                    // Move the key at j back to i unless its home lies cyclically in (i, j].
+                    if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+                        continue;
+                    }
+                    break;
+                }
+                tableKeys[i] = tableKeys[j];
+                tableEntries[i] = tableEntries[j];
+                i = j;
+            }
+        }
+
+    }
+
+}
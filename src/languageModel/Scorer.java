@@ -0,0 +1,56 @@
+package languageModel;
+
+/**
+ * An interface for language models that give the log probability of the next character of a plaintext
+ * given the characters before it. Contexts are packed into a long one byte per character, as in NGramStore.
+ *
+ * @author Shaquille Momoh
+ */
+public interface Scorer {
+
+    /**
+     * The number of next characters covered by 'scoreRow': every 7-bit Ascii character.
+     */
+    int ROW_WIDTH = 128;
+
+    /**
+     * @return : The maximum size of n-grams used by the model, so contexts hold at most n - 1 characters.
+     */
+    int getN();
+
+    /**
+     * A method that returns the log probability of the next character following the given context.
+     *
+     * @param context : The packed context, holding the last 'length' characters.
+     * @param length  : The length of the context (at most n - 1).
+     * @param next    : The next character.
+     * @return : The conditional log probability.
+     */
+    double logProbability(long context, int length, int next);
+
+    /**
+     * A method that fills 'row' with the log probability of every 7-bit Ascii character following the given
+     * context, so a candidate can score all of its extensions with one array read each.
+     *
+     * @param context : The packed context, holding the last 'length' characters.
+     * @param length  : The length of the context (at most n - 1).
+     * @param row     : The array to fill, of at least ROW_WIDTH elements.
+     */
+    default void scoreRow(long context, int length, double[] row) {
+        for (int next = 0; next < ROW_WIDTH; next++) {
+            row[next] = logProbability(context, length, next);
+        }
+    }
+
+    /**
+     * A method that returns a bound no log probability given by the model is above, which lets Beam Search drop
+     * candidates that cannot be extended into the most probable ones without scoring them. A model that does not
+     * know a bound returns positive infinity, so nothing is ever dropped because of it.
+     *
+     * @return : The most log probability the model gives any character following any context.
+     */
+    default double maxLogProbability() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class that splits files up into chunks then processes them chunk by chunk to generate n-grams.
@@ -12,26 +13,46 @@ import java.util.concurrent.*;
  * @author Shaquille Momoh
  */
 public class Split {
-    private NGram ngram = new NGram();
-    private ParseCorpus parse = new ParseCorpus();
+
+    private static final Metrics.Timer COUNT_TIME = Metrics.DEFAULT.timer("ngram_count_seconds",
+            "Time taken to count the n-grams of a corpus, including merging the counts of its chunks.");
+    private static final Metrics.Timer CHUNK_TIME = Metrics.DEFAULT.timer("ngram_chunk_seconds",
+            "Time taken to count the n-grams of one chunk of a corpus.");
+    private static final Metrics.Timer MERGE_TIME = Metrics.DEFAULT.timer("ngram_merge_seconds",
+            "Time taken to merge the counts of two chunks.");
+    private static final Metrics.Counter COUNTED_BYTES = Metrics.DEFAULT.counter("ngram_counted_bytes_total",
+            "Bytes of corpus whose n-grams were counted.");
+
+    // The most bytes counted as one chunk. Chunks are pulled by the threads in turn, so a large corpus is
+    // split into many more chunks than threads and no chunk needs more than a 64 MB view of the corpus.
+    public static final long MAX_CHUNK_SIZE = 64L << 20;
+
     private int n;
-    private File file;
-    private ConcurrentHashMap<String, Integer> languageModel;
+    private Corpus corpus;
 
     public Split() {
     }
 
     /**
-     * A constructor that initialises the corpus to be processed and a
-     * CondurrentHashMap where the n-grams will be stored.
+     * A constructor that initialises the corpus to be processed.
+     * When the corpus is a directory its files are treated as one corpus, in the order they are listed.
+     *
+     * @param file : The corpus to be split.
+     * @param n    : The maximum size of n-gram to be stored.
+     * @throws IOException
+     */
+    public Split(File file, int n) throws IOException {
+        this(Corpus.map(file), n);
+    }
+
+    /**
+     * A constructor that initialises the corpus to be processed.
      *
-     * @param file          : The corpus to be split.
-     * @param languageModel : Where the n-grams will be stored.
-     * @param n             : The maximum size of n-gram to be stored.
+     * @param corpus : The corpus to be split.
+     * @param n      : The maximum size of n-gram to be stored.
      */
-    public Split(File file, ConcurrentHashMap<String, Integer> languageModel, int n) {
-        this.file = file;
-        this.languageModel = languageModel;
+    public Split(Corpus corpus, int n) {
+        this.corpus = corpus;
         this.n = n;
     }
 
@@ -95,56 +116,86 @@ public class Split {
 
     /**
      * A method that returns the size of chunks to be taken by each thread, given noumber of threads
-     * and length of file.
+     * and length of file. Chunks are never larger than 'MAX_CHUNK_SIZE'.
      *
      * @param noThreads : The number of threads to be used.
      * @return : The chunks size.
      * @throws IOException
      */
     public long getChunkNumber(int noThreads) throws IOException {
-        long corpusLength = 0;
-        if(file.isDirectory()){
-            File[] dir = file.listFiles();
-            for (int i = 0; i < dir.length; i++) {
-                corpusLength += dir[i].length();
-            }
-        } else corpusLength = file.length();
+        long corpusLength = corpus.length();
 
-        long chunks = corpusLength / noThreads;
+        long chunks = Math.min(MAX_CHUNK_SIZE, Math.max(1, corpusLength / noThreads));
         System.out.println("Chunk number:" + chunks);
         return chunks;
     }
 
     /**
      * A method that processes the given portion of the file (start - end).
-     * Called simultaneously from several threads.
+     * Called simultaneously from several threads. The n-1 bytes after 'end' are read as well so that
+     * n-grams starting in this part but ending in the next one are counted here, and only here.
+     * The bytes are read straight from the mapped corpus, and only the few around a segment boundary are copied.
      *
-     * @param start : The start of the chunk to be processed.
-     * @param end   : The end of the chunk to be processed.
-     * @return : A HashMap containing ngrams and counts for the part processed.
+     * @param start        : The start of the chunk to be processed.
+     * @param end          : The end of the chunk to be processed.
+     * @param corpusLength : The length of the whole corpus.
+     * @return : An NGramStore containing ngrams and counts for the part processed.
      */
-    public ConcurrentHashMap<String, Integer> processPart(long start, long end) throws Exception {
+    public NGramStore processPart(long start, long end, long corpusLength) {
+        NGramStore part = new NGramStore(n);
+        processPart(part, start, end);
+        return part;
+    }
 
-        String text = parse.fileToString(file);
-        ConcurrentHashMap<String, Integer> ngrams = new ConcurrentHashMap<>();
-        ngram.addNGrams(ngrams, text, 1, n);
-        System.out.println("Computing the part from " + start + " to " + end);
-        Thread.sleep(1000);
-        System.out.println("Finished the part from " + start + " to " + end);
+    /**
+     * A method that adds the counts of the given portion of the file (start - end) to a store.
+     */
+    private void processPart(NGramStore part, long start, long end) {
+        long startTime = System.nanoTime();
+        part.addNGrams(corpus, start, end);
+        CHUNK_TIME.since(startTime);
+        COUNTED_BYTES.add(end - start);
+    }
 
-        return ngrams;
+    /**
+     * A method that creates a task that, when executed, counts chunks into one store of its own until every chunk
+     * has been taken.
+     *
+     * @param next         : The number of the next chunk to be taken, shared by every task.
+     * @param chunkSize    : The size of each chunk.
+     * @param count        : The number of chunks.
+     * @param corpusLength : The length of the corpus in bytes.
+     * @return : The task that is created.
+     */
+    public Callable<NGramStore> processPartsTask(final AtomicLong next, final long chunkSize, final long count,
+                                                 final long corpusLength) {
+        return new Callable<NGramStore>() {
+            public NGramStore call() throws Exception {
+                NGramStore part = new NGramStore(n);
+                for (long chunk = next.getAndIncrement(); chunk < count; chunk = next.getAndIncrement()) {
+                    long start = chunk * chunkSize;
+                    processPart(part, start, Math.min(corpusLength, start + chunkSize));
+                }
+                return part;
+            }
+        };
     }
 
     /**
-     * A method that creates a task that will process the given portion of the file when executed.
+     * A method that creates a task that will add the counts of one part to another when executed.
+     * The smaller part is added to the larger one.
      *
      * @return : The task that is created.
      */
-    public Callable<ConcurrentHashMap<String, Integer>> processPartTask(final long start, final long end) {
-        return new Callable<ConcurrentHashMap<String, Integer>>() {
-            public ConcurrentHashMap<String, Integer> call()
-                    throws Exception {
-                return processPart(start, end);
+    public Callable<NGramStore> mergeTask(final NGramStore one, final NGramStore two) {
+        return new Callable<NGramStore>() {
+            public NGramStore call() {
+                long start = System.nanoTime();
+                int sizeOne = one.getTable(n).size();
+                int sizeTwo = two.getTable(n).size();
+                NGramStore merged = sizeOne >= sizeTwo ? one.merge(two) : two.merge(one);
+                MERGE_TIME.since(start);
+                return merged;
             }
         };
     }
@@ -152,36 +203,60 @@ public class Split {
 
     /**
      * A method that splits a file up into given chunks.
-     * It will then process each chunk in parallel using the given number of threads.
-     * Each thread will create a HashMap for the chunk that was just processed.
-     * The first thread that is created will hold the consolidated counts of all ngrams in the corpus, which is
-     * then returned.
+     * It will then process the chunks in parallel using the given number of threads.
+     * Each thread takes chunks in turn and counts the n-grams starting in them into its own NGramStore, so there
+     * are never more stores than threads however many chunks there are.
+     * The stores are then merged in pairs, in parallel, until one store holds the counts of all n-grams
+     * in the corpus, which is then returned. The counts are the same as counting the corpus in one pass.
      *
-     * @param noOfThreads : The number of threads to be run in parallel
-     * @param chunkSize   : The chunk size that each thread will process
-     * @return : A ConcurrentHashMap containing all the n-grams for the given file, along with their counts.
+     * @param noOfThreads  : The number of threads to be run in parallel
+     * @param chunkSize    : The chunk size that each thread will process
+     * @param corpusLength : The length of the corpus in bytes.
+     * @return : An NGramStore containing all the n-grams for the given file, along with their counts.
      * @throws InterruptedException
      */
-    public ConcurrentHashMap<String, Integer> processAll(int noOfThreads, long chunkSize, int corpusLength)
+    public NGramStore processAll(int noOfThreads, long chunkSize, long corpusLength)
             throws InterruptedException, ExecutionException {
-        int count = (int) ((corpusLength + chunkSize - 1) / chunkSize);
-        List<Callable<ConcurrentHashMap<String, Integer>>> tasks = new ArrayList<>(count);
-        for (int i = 0; i < count; i++)
-            tasks.add(processPartTask(i * chunkSize, Math.min(corpusLength, (i + 1) * chunkSize)));
+        long start = System.nanoTime();
+        long count = (corpusLength + chunkSize - 1) / chunkSize;
+        int workers = (int) Math.min(noOfThreads, count);
+        AtomicLong next = new AtomicLong();
+        List<Callable<NGramStore>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++)
+            tasks.add(processPartsTask(next, chunkSize, count, corpusLength));
         ExecutorService es = Executors.newFixedThreadPool(noOfThreads);
 
-        List<Future<ConcurrentHashMap<String, Integer>>> results = es.invokeAll(tasks);
-        ArrayList<ConcurrentHashMap<String, Integer>> list = new ArrayList<>();
-        es.shutdown();
+        try {
+            List<NGramStore> parts = new ArrayList<>();
+            for (Future<NGramStore> result : es.invokeAll(tasks)) {
+                parts.add(result.get());
+            }
+            if (parts.isEmpty()) {
+                return new NGramStore(n);
+            }
 
+            // Merging the parts in pairs until only one is left.
+            while (parts.size() > 1) {
+                List<Callable<NGramStore>> merges = new ArrayList<>();
+                for (int i = 0; i + 1 < parts.size(); i += 2) {
+                    merges.add(mergeTask(parts.get(i), parts.get(i + 1)));
+                }
+                List<NGramStore> merged = new ArrayList<>();
+                for (Future<NGramStore> result : es.invokeAll(merges)) {
+                    merged.add(result.get());
+                }
+                if (parts.size() % 2 == 1) {
+                    merged.add(parts.get(parts.size() - 1));
+                }
+                parts = merged;
+            }
 
-        for (Future<ConcurrentHashMap<String, Integer>> result : results) {
-            list.add(result.get());
+            return parts.get(0);
+        } finally {
+            es.shutdown();
+            COUNT_TIME.since(start);
         }
 
-        languageModel.putAll(list.get(0));
-        return languageModel;
-
     }
 
 
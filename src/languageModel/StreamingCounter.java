@@ -0,0 +1,481 @@
+package languageModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A class that counts the n-grams of a corpus too large to hold in memory.
+ * The corpus is read in fixed-size windows, carrying the last n-1 bytes of each window into the next so that
+ * no n-gram is lost at a boundary. Whenever the counts outgrow the memory budget they are written to temporary
+ * files as runs sorted by n-gram, one run per n-gram length, and the counts are cleared. At the end the runs of
+ * each length are merged with a k-way merge.
+ *
+ * 'countToModel' streams the merged n-grams, which come out sorted, straight into a model file in the layout of
+ * 'ModelFile', so no more than the memory budget is ever used for counts however many distinct n-grams the corpus
+ * has. 'count' merges them into one store instead, which must then fit in memory, and is for smaller corpora and
+ * models that need the counts themselves, such as Kneser-Ney.
+ *
+ * @author Shaquille Momoh
+ */
+public class StreamingCounter {
+
+    private static final int WINDOW_SIZE = 4 << 20;
+
+    private static final Metrics.Timer COUNT_TIME = Metrics.DEFAULT.timer("ngram_count_seconds",
+            "Time taken to count the n-grams of a corpus, including merging the counts of its chunks.");
+    private static final Metrics.Counter COUNTED_BYTES = Metrics.DEFAULT.counter("ngram_counted_bytes_total",
+            "Bytes of corpus whose n-grams were counted.");
+    private static final Metrics.Counter SPILLS = Metrics.DEFAULT.counter("ngram_spills_total",
+            "Times the counts outgrew the memory budget and were written to run files.");
+
+    private final int n;
+    private final long memoryBudget;
+    private final File tempDir;
+
+    // The run files written so far, for each n-gram length.
+    private final List<List<File>> runs = new ArrayList<>();
+
+    /**
+     * A constructor that creates a counter.
+     *
+     * @param n            : The maximum size of n-grams to be counted.
+     * @param memoryBudget : The number of bytes the counts may use before they are written to disk.
+     * @param tempDir      : The directory to write runs to, or null for the default temporary directory.
+     */
+    public StreamingCounter(int n, long memoryBudget, File tempDir) {
+        this.n = n;
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+        for (int order = 1; order <= n; order++) {
+            runs.add(new ArrayList<File>());
+        }
+    }
+
+    /**
+     * A method that counts every n-gram of length 1 to n in a corpus file, or every file of a corpus directory.
+     *
+     * @param f : The file or directory to count.
+     * @return : A store holding the counts of all n-grams of the corpus.
+     * @throws IOException
+     */
+    public NGramStore count(File f) throws IOException {
+        long start = System.nanoTime();
+        try {
+            NGramStore counts = countWindows(f);
+            if (runs.get(0).isEmpty()) {
+                return counts;
+            }
+            spill(counts);
+            return merge();
+        } finally {
+            deleteRuns();
+            COUNT_TIME.since(start);
+        }
+    }
+
+    /**
+     * A method that counts every n-gram of length 1 to n in a corpus file, or every file of a corpus directory,
+     * and writes the laplace smoothed language model of the counts to a model file, as 'ModelFile.write' would.
+     * If the counts had to be written to runs, the runs are merged straight into the model file.
+     *
+     * @param f         : The file or directory to count.
+     * @param modelFile : The model file to write.
+     * @return : The model file, opened.
+     * @throws IOException
+     */
+    public MappedModel countToModel(File f, File modelFile) throws IOException {
+        long start = System.nanoTime();
+        try {
+            NGramStore counts = countWindows(f);
+            if (runs.get(0).isEmpty()) {
+                counts.bakeLaplace();
+                ModelFile.write(counts, modelFile);
+            } else {
+                spill(counts);
+                counts = null;
+                mergeToModel(modelFile);
+            }
+        } finally {
+            deleteRuns();
+            COUNT_TIME.since(start);
+        }
+        return ModelFile.open(modelFile);
+    }
+
+    /**
+     * A method that counts the corpus window by window, writing the counts to runs whenever they outgrow the
+     * memory budget.
+     *
+     * @return : The counts not yet written to a run.
+     */
+    private NGramStore countWindows(File f) throws IOException {
+        File[] files = f.isDirectory() ? f.listFiles() : new File[]{f};
+        NGramStore counts = new NGramStore(n);
+
+        byte[] window = new byte[WINDOW_SIZE + n - 1];
+        int carried = 0;
+
+        for (File file : files) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), WINDOW_SIZE)) {
+                int read;
+                while ((read = in.read(window, carried, WINDOW_SIZE)) > 0) {
+                    int length = carried + read;
+                    COUNTED_BYTES.add(read);
+                    int to = Math.max(0, length - (n - 1));
+
+                    // Only n-grams starting before the last n-1 bytes are counted now, since those bytes may
+                    // still be followed by the next window.
+                    counts.addNGrams(window, 0, to, length);
+                    System.arraycopy(window, to, window, 0, length - to);
+                    carried = length - to;
+
+                    if (memoryUsage(counts) > memoryBudget) {
+                        spill(counts);
+                        counts = new NGramStore(n);
+                    }
+                }
+            }
+        }
+
+        // The bytes carried past the last window start the shortest n-grams of the corpus.
+        counts.addNGrams(window, 0, carried, carried);
+        return counts;
+    }
+
+    private void deleteRuns() {
+        for (List<File> orderRuns : runs) {
+            for (File run : orderRuns) {
+                run.delete();
+            }
+            orderRuns.clear();
+        }
+    }
+
+    /**
+     * @param counts : The store holding the counts.
+     * @return : An estimate of the number of bytes used by the tables of the store.
+     */
+    private long memoryUsage(NGramStore counts) {
+        long bytes = 0;
+        for (int order = 1; order <= n; order++) {
+            bytes += (long) counts.getTable(order).capacity() * NGramTable.BYTES_PER_SLOT;
+        }
+        return bytes;
+    }
+
+    /**
+     * A method that writes the counts of each n-gram length to a new run file, sorted by packed n-gram.
+     * The corpus length is written to the run of unigrams.
+     */
+    private void spill(NGramStore counts) throws IOException {
+        SPILLS.increment();
+        for (int order = 1; order <= n; order++) {
+            NGramTable table = counts.getTable(order);
+            long[] keys = new long[table.size()];
+            int size = 0;
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isOccupied(slot)) {
+                    keys[size++] = table.keyAt(slot);
+                }
+            }
+            Arrays.sort(keys);
+
+            File run = File.createTempFile("ngrams-" + order + "-", ".run", tempDir);
+            runs.get(order - 1).add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                    1 << 16))) {
+                out.writeLong(order == 1 ? counts.getCorpusLength() : 0);
+                out.writeInt(keys.length);
+                for (long key : keys) {
+                    out.writeLong(key);
+                    out.writeInt(table.getCount(key));
+                }
+            }
+        }
+    }
+
+    /**
+     * A method that merges the runs of every n-gram length into one store, adding the counts of an n-gram
+     * that appears in several runs.
+     */
+    private NGramStore merge() throws IOException {
+        NGramStore store = new NGramStore(n);
+        long corpusLength = 0;
+
+        for (int order = 1; order <= n; order++) {
+            final NGramTable table = store.getTable(order);
+            corpusLength += mergeRuns(order, new Sink() {
+                @Override
+                public void add(long key, int count) {
+                    table.add(key, count);
+                }
+            });
+        }
+
+        store.addCorpusLength(corpusLength);
+        return store;
+    }
+
+    /**
+     * A method that merges the runs of every n-gram length into a model file. The n-grams of each length are
+     * merged into temporary files of keys and of counts, which are then copied into the model file, followed by
+     * the log probabilities. Since the keys of each length are sorted, so are the contexts of the keys, and the
+     * count of each context is found by reading the keys one length shorter alongside.
+     */
+    private void mergeToModel(File modelFile) throws IOException {
+        File[] keyFiles = new File[n];
+        File[] countFiles = new File[n];
+        long[] sizes = new long[n];
+        long corpusLength = 0;
+        try {
+            for (int order = 1; order <= n; order++) {
+                keyFiles[order - 1] = File.createTempFile("keys-" + order + "-", ".tmp", tempDir);
+                countFiles[order - 1] = File.createTempFile("counts-" + order + "-", ".tmp", tempDir);
+                final long[] size = new long[1];
+                try (final DataOutputStream keys = output(keyFiles[order - 1]);
+                     final DataOutputStream counts = output(countFiles[order - 1])) {
+                    corpusLength += mergeRuns(order, new Sink() {
+                        @Override
+                        public void add(long key, int count) throws IOException {
+                            keys.writeLong(key);
+                            counts.writeInt(count);
+                            size[0]++;
+                        }
+                    });
+                }
+                sizes[order - 1] = size[0];
+            }
+
+            long vocabSize = 0;
+            for (long size : sizes) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Too many n-grams of one length for a model file: " + size);
+                }
+                vocabSize += size;
+            }
+            if (vocabSize > Integer.MAX_VALUE) {
+                throw new IOException("Too many n-grams for a model file: " + vocabSize);
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(modelFile), 1 << 20))) {
+                ModelFile.writeHeader(out, n, (int) vocabSize, corpusLength);
+                for (int order = 1; order <= n; order++) {
+                    out.writeInt((int) sizes[order - 1]);
+                    Files.copy(keyFiles[order - 1].toPath(), out);
+                    Files.copy(countFiles[order - 1].toPath(), out);
+                    writeLogProbs(out, order, keyFiles, countFiles, sizes[order - 1], corpusLength, vocabSize);
+                }
+            }
+        } finally {
+            for (int order = 1; order <= n; order++) {
+                if (keyFiles[order - 1] != null) {
+                    keyFiles[order - 1].delete();
+                }
+                if (countFiles[order - 1] != null) {
+                    countFiles[order - 1].delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * A method that writes the laplace smoothed log probability of every n-gram of the given length, as
+     * 'NGramStore.bakeLaplace' calculates it.
+     */
+    private static void writeLogProbs(DataOutputStream out, int order, File[] keyFiles, File[] countFiles,
+                                      long size, long corpusLength, long vocabSize) throws IOException {
+        ContextReader contexts = order == 1 ? null : new ContextReader(keyFiles[order - 2], countFiles[order - 2]);
+        try (DataInputStream keys = input(keyFiles[order - 1]);
+             DataInputStream counts = input(countFiles[order - 1])) {
+            boolean negative = false;
+            for (long i = 0; i < size; i++) {
+                long key = keys.readLong();
+                int count = counts.readInt();
+                long denomCount = corpusLength;
+                if (contexts != null) {
+                    // Keys with their top bit set sort first, before the keys whose contexts are smaller.
+                    if (negative && key >= 0) {
+                        contexts.rewind();
+                    }
+                    negative = key < 0;
+                    denomCount = contexts.count(key >>> 8);
+                }
+                out.writeDouble(Math.log((1.0 + count) / (denomCount + vocabSize)));
+            }
+        } finally {
+            if (contexts != null) {
+                contexts.close();
+            }
+        }
+    }
+
+    /**
+     * A class that finds the counts of ascending contexts by reading the sorted keys and counts of the n-grams one
+     * length shorter alongside them.
+     */
+    private static class ContextReader {
+
+        private final File keyFile;
+        private final File countFile;
+        private DataInputStream keys;
+        private DataInputStream counts;
+        private long key;
+        private int count;
+
+        ContextReader(File keyFile, File countFile) throws IOException {
+            this.keyFile = keyFile;
+            this.countFile = countFile;
+            rewind();
+        }
+
+        void rewind() throws IOException {
+            close();
+            keys = input(keyFile);
+            counts = input(countFile);
+            key = -1;
+        }
+
+        /**
+         * @return : The count of the given context, which must not be below the one asked for before.
+         */
+        long count(long context) throws IOException {
+            try {
+                while (key < context) {
+                    key = keys.readLong();
+                    count = counts.readInt();
+                }
+            } catch (EOFException e) {
+                return 0;
+            }
+            return key == context ? count : 0;
+        }
+
+        void close() throws IOException {
+            if (keys != null) {
+                keys.close();
+                counts.close();
+            }
+        }
+
+    }
+
+    private static DataOutputStream output(File f) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+    }
+
+    private static DataInputStream input(File f) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+    }
+
+    /**
+     * A method that merges the runs of one n-gram length with a k-way merge, adding the counts of an n-gram that
+     * appears in several runs, and hands each n-gram to the sink in ascending order.
+     *
+     * @return : The corpus length written to the runs.
+     */
+    private long mergeRuns(int order, Sink sink) throws IOException {
+        long corpusLength = 0;
+        PriorityQueue<RunReader> queue = new PriorityQueue<>();
+        try {
+            for (File run : runs.get(order - 1)) {
+                RunReader reader = new RunReader(run);
+                corpusLength += reader.corpusLength;
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                long key = reader.key;
+                long count = reader.count;
+                while (!queue.isEmpty() && queue.peek().key == key) {
+                    RunReader same = queue.poll();
+                    count += same.count;
+                    requeue(queue, same);
+                }
+                sink.add(key, (int) Math.min(Integer.MAX_VALUE, count));
+                requeue(queue, reader);
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+        return corpusLength;
+    }
+
+    /**
+     * An interface for what the merged n-grams of one length are added to.
+     */
+    private interface Sink {
+        void add(long key, int count) throws IOException;
+    }
+
+    private static void requeue(PriorityQueue<RunReader> queue, RunReader reader) throws IOException {
+        if (reader.advance()) {
+            queue.add(reader);
+        } else {
+            reader.close();
+        }
+    }
+
+    /**
+     * A class that reads the sorted n-grams of one run file in order.
+     */
+    private static class RunReader implements Comparable<RunReader> {
+
+        private final DataInputStream in;
+        private final long corpusLength;
+        private int remaining;
+        private long key;
+        private int count;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            corpusLength = in.readLong();
+            remaining = in.readInt();
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            try {
+                key = in.readLong();
+                count = in.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Run file ended before all of its n-grams were read", e);
+            }
+            remaining--;
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return Long.compare(key, other.key);
+        }
+
+    }
+
+}
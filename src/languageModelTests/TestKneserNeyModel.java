@@ -0,0 +1,65 @@
+package languageModelTests;
+
+import languageModel.KneserNeyModel;
+import languageModel.NGramStore;
+import languageModel.ParseCorpus;
+import languageModel.Scorer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestKneserNeyModel {
+
+    private static final int N = 4;
+
+    private KneserNeyModel model;
+
+    @Before
+    public void setUp() throws Exception {
+        String text = new ParseCorpus().fileToString(new File("src/mobydick.txt")).substring(0, 100000);
+        NGramStore store = new NGramStore(N);
+        store.addNGrams(text);
+        model = new KneserNeyModel(store);
+    }
+
+    @Test
+    public void testDistributionsSumToOne() {
+        // Seen contexts of every length, contexts backing off part of the way, and a context never seen at all.
+        String[] contexts = {"", "t", "th", "the", "e w", "xqz", "qz", "\u00ff\u00fe\u00fd"};
+        for (String context : contexts) {
+            long key = NGramStore.pack(context, 0, context.length());
+            double sum = 0;
+            for (int next = 0; next < 256; next++) {
+                sum += Math.exp(model.logProbability(key, context.length(), next));
+            }
+            assertEquals("context '" + context + "'", 1.0, sum, 1e-9);
+        }
+    }
+
+    @Test
+    public void testRowMatchesLogProbability() {
+        String[] contexts = {"", "h", "he ", "e w", "xqz", "zth"};
+        double[] row = new double[Scorer.ROW_WIDTH];
+        for (String context : contexts) {
+            long key = NGramStore.pack(context, 0, context.length());
+            model.scoreRow(key, context.length(), row);
+            for (int next = 0; next < Scorer.ROW_WIDTH; next++) {
+                assertEquals(model.logProbability(key, context.length(), next), row[next], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefersLikelyContinuations() {
+        long the = NGramStore.pack("th", 0, 2);
+        assertTrue(model.logProbability(the, 2, 'e') > model.logProbability(the, 2, 'q'));
+        for (int order = 1; order <= N; order++) {
+            assertTrue(model.getDiscount(order) > 0 && model.getDiscount(order) <= 1);
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package languageModelTests;
+
+import languageModel.Metrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestMetrics {
+
+    private Metrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new Metrics("test");
+    }
+
+    @Test
+    public void testHistogramBucketsByPowersOfTwo() {
+        Metrics.Histogram widths = metrics.histogram("width", "Widths.");
+        widths.record(0);
+        widths.record(1);
+        widths.record(3);
+        widths.record(100);
+
+        assertEquals(4, widths.getCount());
+        assertEquals(104.0, widths.getSum(), 0.0);
+        assertEquals(100.0, widths.getMax(), 0.0);
+        // The same name gives the same histogram.
+        assertSame(widths, metrics.histogram("width", "Widths."));
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE test_width histogram\n"));
+        assertTrue(text.contains("test_width_bucket{le=\"0\"} 1\n"));
+        assertTrue(text.contains("test_width_bucket{le=\"1\"} 2\n"));
+        assertTrue(text.contains("test_width_bucket{le=\"3\"} 3\n"));
+        assertTrue(text.contains("test_width_bucket{le=\"127\"} 4\n"));
+        assertTrue(text.contains("test_width_bucket{le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("test_width_sum 104\n"));
+    }
+
+    @Test
+    public void testWritesJsonAndResets() throws Exception {
+        Metrics.Counter bytes = metrics.counter("bytes_total", "Bytes.");
+        bytes.add(40);
+        bytes.increment();
+        metrics.timer("load_seconds", "Loads.").record(2000000000L);
+
+        File f = File.createTempFile("metrics", ".json");
+        f.deleteOnExit();
+        metrics.write(f);
+        String json = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"test_bytes_total\": 41"));
+        assertTrue(json.contains("\"test_load_seconds\": {\"count\": 1, \"sum\": 2, \"max\": 2"));
+
+        metrics.reset();
+        assertEquals(0, bytes.get());
+        assertTrue(metrics.toPrometheus().contains("test_load_seconds_count 0\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNameKeepsItsType() {
+        metrics.timer("load_seconds", "Loads.");
+        metrics.counter("load_seconds", "Loads.");
+    }
+
+}
@@ -0,0 +1,113 @@
+package languageModelTests;
+
+import languageModel.MappedModel;
+import languageModel.ModelFile;
+import languageModel.NGramStore;
+import languageModel.Scorer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestModelFile {
+
+    private static final String TEXT = "the cat sat on the mat with the hat";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NGramStore store;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new NGramStore(3);
+        store.addNGrams(TEXT);
+        store.bakeLaplace();
+        file = folder.newFile("model.ttpm");
+        ModelFile.write(store, file);
+    }
+
+    @Test
+    public void testMappedModelScoresLikeStore() throws Exception {
+        assertScoresLikeStore(ModelFile.open(file));
+    }
+
+    @Test
+    public void testSegmentedModelScoresLikeStore() throws Exception {
+        // Down to one n-gram per segment, so lookups and rows cross segment boundaries.
+        for (int segmentSize = 8; segmentSize <= 64; segmentSize *= 2) {
+            assertScoresLikeStore(ModelFile.open(file, segmentSize));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSegmentSizeThatIsNotAPowerOfTwo() throws Exception {
+        ModelFile.open(file, 24);
+    }
+
+    private void assertScoresLikeStore(MappedModel model) {
+        assertEquals(store.getN(), model.getN());
+        assertEquals(store.getVocabSize(), model.getVocabSize());
+        assertEquals(store.getCorpusLength(), model.getCorpusLength());
+
+        // Every context of the text, as well as contexts that were never seen.
+        String[] contexts = {"", "t", "th", "he", " c", "at", "zq", "q", "e "};
+        double[] expected = new double[Scorer.ROW_WIDTH];
+        double[] actual = new double[Scorer.ROW_WIDTH];
+        for (String context : contexts) {
+            long key = NGramStore.pack(context, 0, context.length());
+            store.scoreRow(key, context.length(), expected);
+            model.scoreRow(key, context.length(), actual);
+            assertArrayEquals(expected, actual, 0.0);
+            for (int next = 0; next < 256; next++) {
+                assertEquals(store.logProbability(key, context.length(), next),
+                        model.logProbability(key, context.length(), next), 0.0);
+            }
+        }
+        assertEquals(store.getCount("the"), model.getCount(NGramStore.pack("the", 0, 3), 3));
+        assertEquals(store.maxLogProbability(), model.maxLogProbability(), 0.0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsFileWithoutMagic() throws Exception {
+        File bad = folder.newFile("bad.ttpm");
+        try (FileOutputStream out = new FileOutputStream(bad)) {
+            out.write(new byte[64]);
+        }
+        ModelFile.open(bad);
+    }
+
+    @Test
+    public void testRejectsCorruptHeaderAndSizes() throws Exception {
+        // A header claiming n = 0, n above the largest supported, and an order with a negative number of n-grams.
+        int[][] corruptions = {{8, 0}, {8, NGramStore.MAX_N + 1}, {24, -1}};
+        for (int[] corruption : corruptions) {
+            File bad = folder.newFile();
+            Files.copy(file.toPath(), bad.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (RandomAccessFile out = new RandomAccessFile(bad, "rw")) {
+                out.seek(corruption[0]);
+                out.writeInt(corruption[1]);
+            }
+            try {
+                ModelFile.open(bad);
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith(bad.toString()));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package languageModelTests;
+
+import languageModel.ConditionalTable;
+import languageModel.NGram;
+import languageModel.NGramModel;
+import languageModel.NGramStore;
+import languageModel.NGramTable;
+import languageModel.ParseCorpus;
+import languageModel.Split;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestNGramStore {
+
+    private static final String TEXT = "the cat sat on the mat with the hat";
+
+    private Map<String, Integer>[] mapArr;
+    private NGramStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        ConcurrentHashMap<String, Integer> ngrams = new NGram().addNGrams(new ConcurrentHashMap<>(), TEXT, 1, 3);
+        mapArr = new Split().splitMap(ngrams, 3);
+        store = new NGramStore(3);
+        store.addNGrams(TEXT);
+        store.bakeLaplace();
+    }
+
+    @Test
+    public void testCountsMatchMaps() {
+        for (Map<String, Integer> map : mapArr) {
+            for (Map.Entry<String, Integer> e : map.entrySet()) {
+                assertEquals(e.getValue().intValue(), store.getCount(e.getKey()));
+            }
+        }
+        assertEquals(new NGramModel().getVocabSize(mapArr), store.getVocabSize());
+        assertEquals(0, store.getCount("xyz"));
+    }
+
+    @Test
+    public void testLogProbabilitiesMatchLaplaceSmoothing() {
+        NGramModel model = new NGramModel();
+        int vocabSize = model.getVocabSize(mapArr);
+        NGramStore fromMaps = NGramStore.fromMaps(mapArr, TEXT.length());
+
+        for (Map<String, Integer> map : mapArr) {
+            for (String ngram : map.keySet()) {
+                double expected = Math.log(model.laplaceSmoothing(mapArr, ngram, TEXT, vocabSize));
+                long key = NGramStore.pack(ngram, 0, ngram.length());
+                assertEquals(expected, store.logProbOf(key, ngram.length()), 1e-12);
+                assertEquals(expected, fromMaps.logProbOf(key, ngram.length()), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testConditionalLogProbability() {
+        long th = NGramStore.pack("th", 0, 2);
+        double expected = store.logProbOf(NGramStore.pack("the", 0, 3), 3) - store.logProbOf(th, 2);
+        assertEquals(expected, store.logProbability(th, 2, 'e'), 0.0);
+        assertEquals(Math.log(0.0000001 / 3) - Math.log(0.0000001 / 2),
+                store.logProbability(NGramStore.pack("zq", 0, 2), 2, 'x'), 1e-12);
+    }
+
+    @Test
+    public void testConditionalTableMatchesStore() {
+        ConditionalTable table = new ConditionalTable(store);
+        String[] contexts = {"", "t", "th", "at", "zq"};
+        for (String context : contexts) {
+            long packed = NGramStore.pack(context, 0, context.length());
+            for (int next = 0; next < 128; next++) {
+                assertEquals(store.logProbability(packed, context.length(), next),
+                        table.logProbability(packed, context.length(), next), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testMaxLogProbabilityIsTheLargestConditional() {
+        // Every context the store can give a row for: the empty one, every stored one and an unseen one.
+        double expected = Double.NEGATIVE_INFINITY;
+        double[] row = new double[128];
+        for (int length = 0; length < 3; length++) {
+            NGramTable contexts = length == 0 ? null : store.getTable(length);
+            int slots = length == 0 ? 1 : contexts.capacity();
+            for (int slot = 0; slot < slots; slot++) {
+                if (length == 0 || contexts.isOccupied(slot)) {
+                    store.scoreRow(length == 0 ? 0 : contexts.keyAt(slot), length, row);
+                    for (double logProb : row) {
+                        expected = Math.max(expected, logProb);
+                    }
+                }
+            }
+            store.scoreRow(NGramStore.pack("zq", 0, length), length, row);
+            for (double logProb : row) {
+                expected = Math.max(expected, logProb);
+            }
+        }
+        assertEquals(expected, store.maxLogProbability(), 0.0);
+
+        ConditionalTable table = new ConditionalTable(store);
+        assertEquals(store.maxLogProbability(), table.maxLogProbability(), 0.0);
+    }
+
+    @Test
+    public void testShardedBakeMatchesLaplaceSmoothing() throws Exception {
+        // Large enough that the tables of the longer n-grams are baked in several shards.
+        String text = new ParseCorpus().fileToString(new File("src/mobydick.txt")).substring(0, 300000);
+        NGramStore large = new NGramStore(4);
+        large.addNGrams(text);
+        large.bakeLaplace();
+        assertTrue(large.getTable(4).capacity() > 1 << 16);
+
+        for (int order = 1; order <= 4; order++) {
+            NGramTable table = large.getTable(order);
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isOccupied(slot)) {
+                    long denomCount = order == 1 ? text.length()
+                            : large.getTable(order - 1).getCount(table.keyAt(slot) >>> 8);
+                    double expected = Math.log((1.0 + table.countAt(slot)) / (denomCount + large.getVocabSize()));
+                    assertEquals(expected, table.logProbAt(slot), 0.0);
+                }
+            }
+        }
+    }
+
+}
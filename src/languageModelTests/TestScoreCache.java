@@ -0,0 +1,109 @@
+package languageModelTests;
+
+import languageModel.NGramStore;
+import languageModel.ScoreCache;
+import languageModel.Scorer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestScoreCache {
+
+    private static final String TEXT = "the cat sat on the mat with the hat and the bat";
+
+    private NGramStore store;
+
+    @Before
+    public void setUp() {
+        store = new NGramStore(3);
+        store.addNGrams(TEXT);
+        store.bakeLaplace();
+    }
+
+    @Test
+    public void testCountsHitsAndMisses() {
+        ScoreCache cache = new ScoreCache(store, 1 << 10);
+        double[] expected = new double[Scorer.ROW_WIDTH];
+        double[] row = new double[Scorer.ROW_WIDTH];
+        long th = NGramStore.pack("th", 0, 2);
+
+        for (int i = 0; i < 3; i++) {
+            cache.scoreRow(th, 2, row);
+            store.scoreRow(th, 2, expected);
+            assertArrayEquals(expected, row, 0.0);
+        }
+        // The same context with a different length is a different row.
+        cache.scoreRow(th, 1, row);
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEvictsBeyondCapacity() {
+        ScoreCache cache = new ScoreCache(store, 8);
+        double[] expected = new double[Scorer.ROW_WIDTH];
+        double[] row = new double[Scorer.ROW_WIDTH];
+        for (int round = 0; round < 2; round++) {
+            for (int context = 0; context < 200; context++) {
+                cache.scoreRow(context, 2, row);
+                store.scoreRow(context, 2, expected);
+                assertArrayEquals(expected, row, 0.0);
+                assertTrue(cache.size() <= cache.capacity());
+            }
+        }
+        assertEquals(8, cache.capacity());
+        assertEquals(cache.getMisses() - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        final ScoreCache cache = new ScoreCache(store, 64);
+        final List<Throwable> failures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    double[] expected = new double[Scorer.ROW_WIDTH];
+                    double[] row = new double[Scorer.ROW_WIDTH];
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            long context = NGramStore.pack(TEXT, (i * 7 + seed) % (TEXT.length() - 2),
+                                    (i * 7 + seed) % (TEXT.length() - 2) + 2);
+                            cache.scoreRow(context, 2, row);
+                            store.scoreRow(context, 2, expected);
+                            assertArrayEquals(expected, row, 0.0);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(80000, cache.getHits() + cache.getMisses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMoreRowsThanAStripeCanIndex() {
+        new ScoreCache(store, Integer.MAX_VALUE);
+    }
+
+}
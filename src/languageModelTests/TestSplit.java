@@ -0,0 +1,84 @@
+package languageModelTests;
+
+import languageModel.Corpus;
+import languageModel.NGramStore;
+import languageModel.NGramTable;
+import languageModel.ParseCorpus;
+import languageModel.Split;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestSplit {
+
+    private static final int N = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File corpus;
+    private NGramStore expected;
+
+    @Before
+    public void setUp() throws Exception {
+        // A directory corpus, so that some n-grams span the boundary between two files.
+        corpus = folder.newFolder("corpus");
+        Files.write(new File(corpus, "a.txt").toPath(), "the cat sat on the mat".getBytes("US-ASCII"));
+        Files.write(new File(corpus, "b.txt").toPath(), " and the hat sat on the cat".getBytes("US-ASCII"));
+
+        expected = new NGramStore(N);
+        expected.addNGrams(new ParseCorpus().fileToString(corpus));
+    }
+
+    @Test
+    public void testChunkedCountsMatchSinglePass() throws Exception {
+        long corpusLength = expected.getCorpusLength();
+        for (int chunkSize = 1; chunkSize <= corpusLength; chunkSize += 3) {
+            NGramStore counted = new Split(corpus, N).processAll(3, chunkSize, corpusLength);
+            assertSameCounts(expected, counted);
+        }
+    }
+
+    @Test
+    public void testCountsCrossSegmentBoundaries() throws Exception {
+        long corpusLength = expected.getCorpusLength();
+        // Segments shorter than an n-gram, as long as one, and longer.
+        for (int segmentSize = 1; segmentSize <= 9; segmentSize += 2) {
+            Corpus mapped = Corpus.map(corpus, segmentSize);
+            assertEquals(corpusLength, mapped.length());
+
+            NGramStore direct = new NGramStore(N);
+            direct.addNGrams(mapped, 0, corpusLength);
+            assertSameCounts(expected, direct);
+
+            for (int chunkSize = 1; chunkSize <= corpusLength; chunkSize += 4) {
+                assertSameCounts(expected, new Split(mapped, N).processAll(3, chunkSize, corpusLength));
+            }
+        }
+    }
+
+    private static void assertSameCounts(NGramStore expected, NGramStore actual) {
+        assertEquals(expected.getCorpusLength(), actual.getCorpusLength());
+        for (int order = 1; order <= N; order++) {
+            NGramTable table = expected.getTable(order);
+            assertEquals(table.size(), actual.getTable(order).size());
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isOccupied(slot)) {
+                    assertEquals(table.countAt(slot), actual.getTable(order).getCount(table.keyAt(slot)));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyCorpus() throws Exception {
+        Corpus.map(folder.newFile("empty.txt"));
+    }
+
+}
@@ -0,0 +1,83 @@
+package languageModelTests;
+
+import languageModel.MappedModel;
+import languageModel.ModelFile;
+import languageModel.NGramStore;
+import languageModel.NGramTable;
+import languageModel.ParseCorpus;
+import languageModel.StreamingCounter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestStreamingCounter {
+
+    private static final int N = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File corpus;
+    private NGramStore expected;
+
+    @Before
+    public void setUp() throws Exception {
+        corpus = new File("src/mobydick.txt");
+        expected = new NGramStore(N);
+        expected.addNGrams(new ParseCorpus().fileToString(corpus));
+    }
+
+    @Test
+    public void testSpilledCountsMatchSinglePass() throws Exception {
+        // A budget this small makes the counter spill after every window.
+        NGramStore counted = new StreamingCounter(N, 1 << 16, folder.getRoot()).count(corpus);
+        assertSameCounts(counted);
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testCountsWithoutSpillingMatchSinglePass() throws Exception {
+        assertSameCounts(new StreamingCounter(N, Long.MAX_VALUE, folder.getRoot()).count(corpus));
+    }
+
+    @Test
+    public void testSpilledCountsMergeIntoTheSameModelFile() throws Exception {
+        expected.bakeLaplace();
+        File models = folder.newFolder("models");
+        File written = new File(models, "written.ttpm");
+        ModelFile.write(expected, written);
+
+        File runs = folder.newFolder("runs");
+        File streamed = new File(models, "streamed.ttpm");
+        MappedModel model = new StreamingCounter(N, 1 << 16, runs).countToModel(corpus, streamed);
+        assertArrayEquals(Files.readAllBytes(written.toPath()), Files.readAllBytes(streamed.toPath()));
+        assertEquals(expected.getVocabSize(), model.getVocabSize());
+        assertEquals(0, runs.listFiles().length);
+
+        // Without spilling the counts are written from the store.
+        File small = new File(models, "small.ttpm");
+        new StreamingCounter(N, Long.MAX_VALUE, runs).countToModel(corpus, small);
+        assertArrayEquals(Files.readAllBytes(written.toPath()), Files.readAllBytes(small.toPath()));
+    }
+
+    private void assertSameCounts(NGramStore actual) {
+        assertEquals(expected.getCorpusLength(), actual.getCorpusLength());
+        for (int order = 1; order <= N; order++) {
+            NGramTable table = expected.getTable(order);
+            assertEquals(table.size(), actual.getTable(order).size());
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isOccupied(slot)) {
+                    assertEquals(table.countAt(slot), actual.getTable(order).getCount(table.keyAt(slot)));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package beamSearch;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A ScoringKernel that scores the extensions of a candidate in SIMD lanes with the Vector API. Each step gathers
+ * the scores of a lane's worth of characters from the row of the first plaintext and of their XOR partners from
+ * the row of the second, and adds them to the log probabilities of the candidate. The extensions beyond the last
+ * full vector are scored by the scalar loop. The additions are the same as the scalar kernel's, lane by lane, so
+ * the scores are exactly the same.
+ *
+ * It needs Java 16 or later and '--add-modules jdk.incubator.vector', and is loaded by 'ScoringKernel.create'.
+ *
+ * @author Shaquille Momoh
+ */
+public class VectorScoringKernel extends ScoringKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void score(double[] rowOne, int[] chars, double probOne, double[] rowTwo, int[] partners, double probTwo,
+                      double[] scoresOne, double[] scoresTwo, double[] totals, int count) {
+        int bound = SPECIES.loopBound(count);
+        DoubleVector candidateOne = DoubleVector.broadcast(SPECIES, probOne);
+        DoubleVector candidateTwo = DoubleVector.broadcast(SPECIES, probTwo);
+
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector one = candidateOne.add(DoubleVector.fromArray(SPECIES, rowOne, 0, chars, i));
+            DoubleVector two = candidateTwo.add(DoubleVector.fromArray(SPECIES, rowTwo, 0, partners, i));
+            one.intoArray(scoresOne, i);
+            two.intoArray(scoresTwo, i);
+            one.add(two).intoArray(totals, i);
+        }
+        for (; i < count; i++) {
+            double one = probOne + rowOne[chars[i]];
+            double two = probTwo + rowTwo[partners[i]];
+            scoresOne[i] = one;
+            scoresTwo[i] = two;
+            totals[i] = one + two;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+
+}
@@ -0,0 +1,53 @@
+package beamSearchTests;
+
+import beamSearch.ScoringKernel;
+import beamSearch.VectorScoringKernel;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestVectorScoringKernel {
+
+    @Test
+    public void testMatchesScalarKernel() {
+        Random random = new Random(19);
+        double[] rowOne = new double[128];
+        double[] rowTwo = new double[128];
+        for (int i = 0; i < 128; i++) {
+            rowOne[i] = -20 * random.nextDouble();
+            rowTwo[i] = -20 * random.nextDouble();
+        }
+
+        // The printable characters, and 95 of them to leave extensions beyond the last full vector.
+        int[] chars = new int[96];
+        chars[0] = 13;
+        for (int i = 1; i < chars.length; i++) {
+            chars[i] = 31 + i;
+        }
+        for (int count : new int[]{96, 95}) {
+            for (int cipherByte = 0; cipherByte < 128; cipherByte++) {
+                int[] partners = new int[chars.length];
+                for (int i = 0; i < chars.length; i++) {
+                    partners[i] = chars[i] ^ cipherByte;
+                }
+                double[][] scalar = score(new ScoringKernel(), rowOne, chars, rowTwo, partners, count);
+                double[][] vector = score(new VectorScoringKernel(), rowOne, chars, rowTwo, partners, count);
+                for (int k = 0; k < 3; k++) {
+                    assertArrayEquals(scalar[k], vector[k], 0.0);
+                }
+            }
+        }
+        assertTrue(ScoringKernel.create() instanceof VectorScoringKernel);
+    }
+
+    private static double[][] score(ScoringKernel kernel, double[] rowOne, int[] chars, double[] rowTwo,
+                                    int[] partners, int count) {
+        double[][] out = new double[3][chars.length];
+        kernel.score(rowOne, chars, -31.5, rowTwo, partners, -42.25, out[0], out[1], out[2], count);
+        return out;
+    }
+
+}